@@ -0,0 +1,167 @@
+package com.thoughtworks.rslist.benchmark;
+
+import com.thoughtworks.rslist.domain.RankedRsEvent;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.index.RsEventIndex;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteFoldLock;
+import com.thoughtworks.rslist.service.WriteBehindVoteCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// 热搜排名的基准测试：原先 getAllRsEventByOrderDesc 的全量排序 + 购买排名插入，对比 RsEventIndex，
+// 以及 RsEventDto 到 RsEvent 的映射。数据随机生成，paidCount 条热搜购买了不重复的排名。
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    int eventCount;
+
+    @Param({"0", "10", "1000"})
+    int paidCount;
+
+    List<RsEventDto> rsEventDtos;
+    List<RankedRsEvent> projected;
+    RsEventIndex rsEventIndex;
+    int nextVoted;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        rsEventDtos = new ArrayList<>(eventCount);
+        for (int id = 1; id <= eventCount; id++) {
+            rsEventDtos.add(RsEventDto.builder().id(id).eventName("event " + id).keyword("keyword")
+                    .voteNum(random.nextInt(10_000)).build());
+        }
+        // 购买的排名分布在前 2 * paidCount 名内，各不相同
+        int paid = Math.min(paidCount, eventCount);
+        List<Integer> ranks = new ArrayList<>();
+        for (int rank = 1; rank <= Math.min(2 * paid, eventCount); rank++) {
+            ranks.add(rank);
+        }
+        Collections.shuffle(ranks, random);
+        for (int i = 0; i < paid; i++) {
+            rsEventDtos.get(random.nextInt(eventCount)).setRsRank(ranks.get(i));
+        }
+        projected = rsEventDtos.stream()
+                .map(item -> new RankedRsEvent(item.getId(), item.getEventName(), item.getKeyword(),
+                        item.getVoteNum(), item.getRsRank()))
+                .collect(Collectors.toList());
+        rsEventIndex = newIndex(projected);
+    }
+
+    @Benchmark
+    public List<RsEvent> legacySortAndMerge() {
+        List<RsEvent> rsEvents = mapDtoToRsEvent();
+
+        List<RsEvent> rsEventNoBuyRank = rsEvents.stream().filter(rs -> rs.getRsRank() == 0).collect(Collectors.toList());
+        rsEventNoBuyRank.sort(new LegacyRsEventComparator());
+
+        List<RsEvent> rsEventBuyRank = rsEvents.stream().filter(rs -> rs.getRsRank() != 0).collect(Collectors.toList());
+        Map<Integer, RsEvent> rsEventBuyRankMap = new TreeMap<>();
+        rsEventBuyRank.forEach(rs -> rsEventBuyRankMap.put(rs.getRsRank(), rs));
+        rsEventBuyRankMap.forEach((k, v) -> {
+            k = k - 1;
+            if (k >= rsEventNoBuyRank.size()) {
+                rsEventNoBuyRank.add(rsEventNoBuyRank.size(), v);
+            } else {
+                rsEventNoBuyRank.add(k, v);
+            }
+        });
+        for (int i = 0; i < rsEventNoBuyRank.size(); i++) {
+            rsEventNoBuyRank.get(i).setRsRank(i + 1);
+        }
+        return rsEventNoBuyRank;
+    }
+
+    @Benchmark
+    public List<RsEvent> mapDtoToRsEvent() {
+        return rsEventDtos.stream()
+                .map(item -> RsEvent.builder()
+                        .eventName(item.getEventName())
+                        .keyword(item.getKeyword())
+                        .userId(item.getId())
+                        .voteNum(item.getVoteNum())
+                        .rsRank(item.getRsRank())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public RsEventIndex indexBuild() {
+        return newIndex(projected);
+    }
+
+    @Benchmark
+    public List<RsEvent> indexRankedAll() {
+        return rsEventIndex.ranked(0, rsEventIndex.size());
+    }
+
+    @Benchmark
+    public List<RsEvent> indexRankedTop10() {
+        return rsEventIndex.ranked(0, 10);
+    }
+
+    @Benchmark
+    public List<RsEvent> indexVoteThenTop10() {
+        nextVoted = nextVoted % eventCount + 1;
+        rsEventIndex.onChange(RsEventChange.voted(nextVoted, 1));
+        return rsEventIndex.ranked(0, 10);
+    }
+
+    private static RsEventIndex newIndex(List<RankedRsEvent> rsEvents) {
+        RsEventRepository repository = (RsEventRepository) Proxy.newProxyInstance(
+                RsEventRepository.class.getClassLoader(), new Class<?>[]{RsEventRepository.class},
+                (proxy, method, args) -> {
+                    if ("findAllRanked".equals(method.getName())) {
+                        return rsEvents;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        RsEventIndex index = new RsEventIndex(repository, new WriteBehindVoteCounter(null, null, null, null, false),
+                new ShardedVoteCounter(null, null, null, null, null, false, 1), new VoteFoldLock());
+        index.load();
+        return index;
+    }
+
+    // 原 RsController 中的比较器，按票数降序，同票保持原有顺序（List.sort 是稳定排序）
+    static class LegacyRsEventComparator implements Comparator<RsEvent> {
+        @Override
+        public int compare(RsEvent rsEvent1, RsEvent rsEvent2) {
+            int result = 0;
+            int voteCountSeq = rsEvent1.getVoteNum() - rsEvent2.getVoteNum();
+            if (voteCountSeq != 0) {
+                result = (voteCountSeq < 0) ? 1 : -1;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.thoughtworks.rslist.benchmark;
+
+import com.thoughtworks.rslist.domain.RankedRsEvent;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.index.RsEventIndex;
+import com.thoughtworks.rslist.index.RsEventSearchIndex;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteFoldLock;
+import com.thoughtworks.rslist.service.WriteBehindVoteCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// /rs/search 的倒排索引查询：热搜名称由随机汉字组成，查询一个只命中少量热搜的词和一个命中约 4% 热搜的单字，
+// 对比逐条 contains 的全量扫描。查询代价随命中数增长，与热搜总数无关
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    private static final String CHARACTERS = "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去把性好应开它合还因由其些然前外天政四日那社义事平形相全表间样与关各重新线内数正心反你明看原又么利比或但质气第向道命此变条只没结解问意建月公无系军很情者最立代想已通并提直题党程展五果料象员革位入常文总次品式活设及管特件长求老头基资边流路级少图山统接知较将组见计别她手角期根论运农指几九区强放决西被干做必战先回则任取据处理府研质";
+
+    @Param({"10000", "100000", "1000000"})
+    int eventCount;
+
+    List<RankedRsEvent> rsEvents;
+    RsEventSearchIndex searchIndex;
+    String rare;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        rsEvents = new ArrayList<>(eventCount);
+        for (int id = 1; id <= eventCount; id++) {
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                name.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+            }
+            rsEvents.add(new RankedRsEvent(id, name.toString(), "keyword", random.nextInt(10_000), 0));
+        }
+        rare = rsEvents.get(eventCount / 2).getEventName().substring(3, 7);
+        RsEventRepository repository = (RsEventRepository) Proxy.newProxyInstance(
+                RsEventRepository.class.getClassLoader(), new Class<?>[]{RsEventRepository.class},
+                (proxy, method, args) -> {
+                    if ("findAllRanked".equals(method.getName())) {
+                        return rsEvents;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        RsEventIndex rsEventIndex = new RsEventIndex(repository,
+                new WriteBehindVoteCounter(null, null, null, null, false),
+                new ShardedVoteCounter(null, null, null, null, null, false, 1), new VoteFoldLock());
+        rsEventIndex.load();
+        searchIndex = new RsEventSearchIndex(repository, rsEventIndex);
+        searchIndex.load();
+    }
+
+    @Benchmark
+    public List<RsEvent> searchRareTerm() {
+        return searchIndex.search(rare, 0, 10);
+    }
+
+    @Benchmark
+    public List<RsEvent> searchSingleCharacter() {
+        return searchIndex.search("的", 0, 10);
+    }
+
+    @Benchmark
+    public int scanRareTerm() {
+        int matched = 0;
+        for (RankedRsEvent rsEvent : rsEvents) {
+            if (rsEvent.getEventName().contains(rare) || rsEvent.getKeyword().contains(rare)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,48 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.exception.RequestNotValidException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// 翻页游标：把上一页最后一条记录的排序键编码成不透明的字符串
+public class PageCursor {
+    public static final String HEADER = "X-Next-Cursor";
+    private static final String SEPARATOR = ",";
+
+    private PageCursor() {
+    }
+
+    public static String encode(Object... keys) {
+        StringBuilder builder = new StringBuilder();
+        for (Object key : keys) {
+            if (builder.length() > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(key);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String[] decode(String cursor, int keyCount) {
+        try {
+            String[] keys = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(SEPARATOR, -1);
+            if (keys.length != keyCount) {
+                throw new RequestNotValidException("invalid cursor");
+            }
+            return keys;
+        } catch (IllegalArgumentException e) {
+            throw new RequestNotValidException("invalid cursor");
+        }
+    }
+
+    public static int decodeInt(String cursor) {
+        try {
+            return Integer.parseInt(decode(cursor, 1)[0]);
+        } catch (NumberFormatException e) {
+            throw new RequestNotValidException("invalid cursor");
+        }
+    }
+}
@@ -1,16 +1,37 @@
 package com.thoughtworks.rslist.api;
 
+import com.thoughtworks.rslist.cache.DataVersion;
+import com.thoughtworks.rslist.cache.RankingSnapshotPublisher;
+import com.thoughtworks.rslist.cache.RsEventReadCache;
+import com.thoughtworks.rslist.cache.SingleFlightCache;
+import com.thoughtworks.rslist.domain.KeywordCount;
 import com.thoughtworks.rslist.domain.RsEvent;
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteResult;
 import com.thoughtworks.rslist.dto.RsEventDto;
 import com.thoughtworks.rslist.dto.UserDto;
 import com.thoughtworks.rslist.exception.Error;
 import com.thoughtworks.rslist.exception.RequestNotValidException;
+import com.thoughtworks.rslist.exception.TooManyRequestsException;
+import com.thoughtworks.rslist.index.KeywordHeavyHitters;
+import com.thoughtworks.rslist.index.RankPriceBook;
+import com.thoughtworks.rslist.index.RsEventIndex;
+import com.thoughtworks.rslist.index.RsEventSearchIndex;
+import com.thoughtworks.rslist.ratelimit.RateLimiter;
+import com.thoughtworks.rslist.repository.OffsetPageRequest;
 import com.thoughtworks.rslist.repository.RsEventRepository;
 import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.service.RankingStream;
 import com.thoughtworks.rslist.service.RsService;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteFoldLock;
+import com.thoughtworks.rslist.service.WriteBehindVoteCounter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -20,9 +41,11 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @RestController
 @Validated
@@ -33,44 +56,105 @@ public class RsController {
     UserRepository userRepository;
     @Autowired
     RsService rsService;
+    @Autowired
+    RsEventIndex rsEventIndex;
+    @Autowired
+    WriteBehindVoteCounter voteCounter;
+    @Autowired
+    ShardedVoteCounter shardedVoteCounter;
+    @Autowired
+    VoteFoldLock foldLock;
+    @Autowired
+    RankPriceBook rankPriceBook;
+    @Autowired
+    RsEventReadCache readCache;
+    @Autowired
+    RankingSnapshotPublisher snapshotPublisher;
+    @Autowired
+    DataVersion dataVersion;
+    @Autowired
+    RankingStream rankingStream;
+    @Autowired
+    RateLimiter rateLimiter;
+    @Autowired
+    RsEventSearchIndex searchIndex;
+    @Autowired
+    KeywordHeavyHitters keywordHeavyHitters;
 
     @GetMapping("/rs/list")
-    public ResponseEntity<List<RsEvent>> getRsEventListBetween(
-            @RequestParam(required = false) Integer start, @RequestParam(required = false) Integer end) {
-        List<RsEvent> rsEvents =
-                rsEventRepository.findAll().stream()
-                        .map(
-                                item ->
-                                        RsEvent.builder()
-                                                .eventName(item.getEventName())
-                                                .keyword(item.getKeyword())
-                                                .userId(item.getId())
-                                                .voteNum(item.getVoteNum())
-                                                .build())
-                        .collect(Collectors.toList());
+    public ResponseEntity<?> getRsEventListBetween(
+            @RequestParam(required = false) Integer start, @RequestParam(required = false) Integer end,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "10") int size,
+            WebRequest request) {
+        if (request.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
+        RankingSnapshotPublisher.Page page = null;
+        if (cursor != null) {
+            page = snapshotPublisher.pageAfter(PageCursor.decodeInt(cursor), size);
+        } else if (start != null && end != null) {
+            page = snapshotPublisher.page(start, end);
+        }
+        if (page != null) {
+            return ResponseEntity.ok()
+                    .header(PageCursor.HEADER, PageCursor.encode(page.getLastId()))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(page.getBody());
+        }
+        return readCache.get(String.format("list:%s:%s:%s:%d", start, end, cursor, size),
+                () -> foldLock.read(() -> loadRsEventList(start, end, cursor, size)));
+    }
+
+    private ResponseEntity<List<RsEvent>> loadRsEventList(Integer start, Integer end, String cursor, int size) {
+        if (cursor != null) {
+            return getRsEventListAfter(PageCursor.decodeInt(cursor), size);
+        }
         if (start == null || end == null) {
-            return ResponseEntity.ok(rsEvents);
+            return ResponseEntity.ok(withPendingVotes(rsEventRepository.findAllListed()));
+        }
+        if (start < 1 || end < start) {
+            throw new RequestNotValidException("invalid index");
         }
-        return ResponseEntity.ok(rsEvents.subList(start - 1, end));
+        int limit = end - start + 1;
+        List<RsEvent> rsEvents = rsEventRepository.findListed(new OffsetPageRequest(start - 1, limit));
+        if (rsEvents.size() < limit) {
+            throw new RequestNotValidException("invalid index");
+        }
+        return withNextCursor(rsEvents, limit);
+    }
+
+    private ResponseEntity<List<RsEvent>> getRsEventListAfter(int lastId, int size) {
+        if (size < 1) {
+            throw new RequestNotValidException("invalid size");
+        }
+        return withNextCursor(rsEventRepository.findListedAfter(lastId, PageRequest.of(0, size)), size);
+    }
+
+    private ResponseEntity<List<RsEvent>> withNextCursor(List<RsEvent> rsEvents, int size) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (rsEvents.size() == size) {
+            response.header(PageCursor.HEADER, PageCursor.encode(rsEvents.get(size - 1).getUserId()));
+        }
+        return response.body(withPendingVotes(rsEvents));
+    }
+
+    // 投影出来的 RsEvent 中 userId 即热搜 id
+    private List<RsEvent> withPendingVotes(List<RsEvent> rsEvents) {
+        rsEvents.forEach(item -> item.setVoteNum(item.getVoteNum() + voteCounter.pending(item.getUserId())
+                + shardedVoteCounter.pending(item.getUserId())));
+        return rsEvents;
     }
 
     @GetMapping("/rs/{index}")
-    public ResponseEntity<RsEvent> getRsEvent(@PathVariable int index) {
-        List<RsEvent> rsEvents =
-                rsEventRepository.findAll().stream()
-                        .map(
-                                item ->
-                                        RsEvent.builder()
-                                                .eventName(item.getEventName())
-                                                .keyword(item.getKeyword())
-                                                .userId(item.getId())
-                                                .voteNum(item.getVoteNum())
-                                                .build())
-                        .collect(Collectors.toList());
-        if (index < 1 || index > rsEvents.size()) {
+    public ResponseEntity<RsEvent> getRsEvent(@PathVariable int index, WebRequest request) {
+        if (request.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
+        RsEvent rsEvent = readCache.get("index:" + index, () -> rsEventIndex.at(index));
+        if (rsEvent == null) {
             throw new RequestNotValidException("invalid index");
         }
-        return ResponseEntity.ok(rsEvents.get(index - 1));
+        return ResponseEntity.ok(rsEvent);
     }
 
     @PostMapping("/rs/event")
@@ -92,50 +176,104 @@ public class RsController {
 
     @PostMapping("/rs/vote/{id}")
     public ResponseEntity vote(@PathVariable int id, @RequestBody Vote vote) {
+        rateLimiter.acquireVote(vote.getUserId());
         rsService.vote(vote, id);
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/rs/votes")
+    public ResponseEntity<List<VoteResult>> voteAll(@RequestBody List<Vote> votes) {
+        rateLimiter.acquireVotes(votes);
+        return ResponseEntity.ok(rsService.voteAll(votes));
+    }
+
     @PostMapping("/rs/buy/{id}")
-    public ResponseEntity buy(@PathVariable int id, @RequestBody Trade trade) {
+    public ResponseEntity buy(@PathVariable int id, @RequestBody Trade trade, HttpServletRequest request) {
+        rateLimiter.acquireBuy(request.getRemoteAddr());
         rsService.buy(trade, id);
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping("/rs/ranks/prices")
+    public ResponseEntity<Map<Integer, Integer>> getRankPrices() {
+        return ResponseEntity.ok(rankPriceBook.prices());
+    }
+
     @GetMapping("/rs/sortedevents")
-    public ResponseEntity<List<RsEvent>> getAllRsEventByOrderDesc() {
-        List<RsEvent> rsEvents = rsEventRepository.findAll().stream()
-                .map(item -> RsEvent.builder()
-                        .eventName(item.getEventName())
-                        .keyword(item.getKeyword())
-                        .userId(item.getId())
-                        .voteNum(item.getVoteNum())
-                        .rsRank(item.getRsRank())
-                        .build())
-                .collect(Collectors.toList());
-
-        List<RsEvent> rsEventNoBuyRank = rsEvents.stream().filter(rs -> rs.getRsRank() == 0).collect(Collectors.toList());
-        rsEventNoBuyRank.sort(new RsEventComparator());
-
-        List<RsEvent> rsEventBuyRank = rsEvents.stream().filter(rs -> rs.getRsRank() != 0).collect(Collectors.toList());
-        Map<Integer, RsEvent> rsEventBuyRankMap = new TreeMap<>();
-        rsEventBuyRank.forEach(rs -> {
-            rsEventBuyRankMap.put(rs.getRsRank(), rs);
-        });
-        rsEventBuyRankMap.forEach((k, v) -> {//sortAllTopics.add(k, v));
-            k = k - 1;
-            if (k >= rsEventNoBuyRank.size()) { // 若某个位置热搜覆盖了最后一位的热搜，其位置会因为覆盖向前移动一位。
-                rsEventNoBuyRank.add(rsEventNoBuyRank.size(), v);
-            } else {
-                rsEventNoBuyRank.add(k, v);
-            }
-        });
-        for (int i = 0; i < rsEventNoBuyRank.size(); i++) {
-            rsEventNoBuyRank.get(i).setRsRank(i+1);
-        }
-        return ResponseEntity.ok(rsEventNoBuyRank);
+    public ResponseEntity<?> getAllRsEventByOrderDesc(WebRequest request) {
+        if (request.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
+        byte[] snapshot = snapshotPublisher.sorted();
+        if (snapshot != null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(snapshot);
+        }
+        return ResponseEntity.ok(readCache.get("sorted", () -> rsEventIndex.ranked(0, rsEventIndex.size())));
+    }
+
+    // 只取前 k 名，代价与 k 成正比，不随热搜总数增长
+    @GetMapping("/rs/top")
+    public ResponseEntity<List<RsEvent>> getTopRsEvents(@RequestParam int k, WebRequest request) {
+        if (k < 1) {
+            throw new RequestNotValidException("invalid k");
+        }
+        if (request.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok(readCache.get("top:" + k, () -> rsEventIndex.ranked(0, k)));
     }
 
+    // 按关键字汇总票数的前 k 名，是近似值，真实票数在 [voteNum - error, voteNum] 之间
+    @GetMapping("/rs/keywords/top")
+    public ResponseEntity<List<KeywordCount>> getTopKeywords(@RequestParam int k, WebRequest request) {
+        if (k < 1) {
+            throw new RequestNotValidException("invalid k");
+        }
+        if (request.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok(keywordHeavyHitters.top(k));
+    }
+
+    // 按名称和关键字的子串搜索，走内存倒排索引，不访问数据库
+    @GetMapping("/rs/search")
+    public ResponseEntity<List<RsEvent>> searchRsEvents(
+            @RequestParam String q, @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size, WebRequest request) {
+        if (q.trim().isEmpty()) {
+            throw new RequestNotValidException("invalid query");
+        }
+        if (page < 1 || size < 1) {
+            throw new RequestNotValidException("invalid page");
+        }
+        if (request.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
+        long from = (long) (page - 1) * size;
+        if (from > Integer.MAX_VALUE) {
+            return ResponseEntity.ok(new ArrayList<>());
+        }
+        return ResponseEntity.ok(searchIndex.search(q, (int) from, size));
+    }
+
+    @GetMapping("/rs/stream")
+    public SseEmitter streamRanking() {
+        return rankingStream.subscribe();
+    }
+
+    @GetMapping("/rs/cache/stats")
+    public ResponseEntity<SingleFlightCache.Stats> getCacheStats() {
+        return ResponseEntity.ok(readCache.stats());
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Error> handleTooManyRequests(TooManyRequestsException e) {
+        Error error = new Error();
+        error.setError(e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(error);
+    }
 
     @ExceptionHandler({RequestNotValidException.class, RuntimeException.class})
     public ResponseEntity<Error> handleRequestErrorHandler(Exception e) {
@@ -144,19 +282,3 @@ public class RsController {
         return ResponseEntity.badRequest().body(error);
     }
 }
-
-// 比较器
-class RsEventComparator implements Comparator<RsEvent> {
-    @Override
-    public int compare(RsEvent rsEvent1, RsEvent rsEvent2) {
-        int result = 0;
-        // 比较用来排序的两个参数。根据第一个参数小于、等于或大于第二个参数分别返回负整数、零或正整数。
-        // 总票数排序,升序
-        int voteCountSeq = rsEvent1.getVoteNum() - rsEvent2.getVoteNum();
-        if (voteCountSeq != 0) {
-            result = (voteCountSeq < 0) ? 1 : -1;
-        }
-        return result;
-    }
-
-}
\ No newline at end of file
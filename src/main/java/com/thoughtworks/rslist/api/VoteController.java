@@ -1,36 +1,75 @@
 package com.thoughtworks.rslist.api;
 
+import com.thoughtworks.rslist.cache.DataVersion;
+import com.thoughtworks.rslist.datasource.ReplicaRoutingDataSource;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteRecord;
+import com.thoughtworks.rslist.exception.Error;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
 import com.thoughtworks.rslist.repository.VoteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @RestController
 public class VoteController {
   @Autowired VoteRepository voteRepository;
+  @Autowired DataVersion dataVersion;
+
+  @Value("${rs.vote-record.page-size:5}")
+  int defaultPageSize;
 
   @GetMapping("/voteRecord")
   public ResponseEntity<List<Vote>> getVoteRecord(
-      @RequestParam int userId, @RequestParam int rsEventId, @RequestParam int pageIndex) {
-    Pageable pageable = PageRequest.of(pageIndex - 1, 5);
-    return ResponseEntity.ok(
-        voteRepository.findAllByUserIdAndRsEventId(userId, rsEventId, pageable).stream()
-            .map(
-                item ->
-                    Vote.builder()
-                        .voteNum(item.getNum())
-                        .userId(item.getUser().getId())
-                        .time(item.getLocalDateTime())
-                        .rsEventId(item.getRsEvent().getId())
-                        .build())
-            .collect(Collectors.toList()));
+      @RequestParam int userId, @RequestParam int rsEventId,
+      @RequestParam(defaultValue = "1") int pageIndex, @RequestParam(required = false) Integer pageSize,
+      @RequestParam(required = false) String cursor, WebRequest request) {
+    int size = pageSize == null ? defaultPageSize : pageSize;
+    if (size < 1 || pageIndex < 1) {
+      throw new RequestNotValidException("invalid page");
+    }
+    if (request.checkNotModified(dataVersion.etag())) {
+      return null;
+    }
+    // 结果带着 DataVersion 的 ETag 返回，从落后的从库读到的旧记录会被之后的 304 固定住，读主库
+    List<VoteRecord> records = ReplicaRoutingDataSource.readFromPrimary(
+        () -> findRecords(userId, rsEventId, pageIndex, size, cursor));
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (records.size() == size) {
+      VoteRecord last = records.get(size - 1);
+      response.header(PageCursor.HEADER, PageCursor.encode(last.getTime(), last.getId()));
+    }
+    return response.body(records.stream().map(VoteRecord::toVote).collect(Collectors.toList()));
+  }
+
+  private List<VoteRecord> findRecords(int userId, int rsEventId, int pageIndex, int size, String cursor) {
+    if (cursor == null) {
+      return voteRepository.findRecords(userId, rsEventId, PageRequest.of(pageIndex - 1, size));
+    }
+    String[] keys = PageCursor.decode(cursor, 2);
+    try {
+      return voteRepository.findRecordsAfter(userId, rsEventId,
+          LocalDateTime.parse(keys[0]), Integer.parseInt(keys[1]), PageRequest.of(0, size));
+    } catch (DateTimeParseException | NumberFormatException e) {
+      throw new RequestNotValidException("invalid cursor");
+    }
+  }
+
+  @ExceptionHandler(RequestNotValidException.class)
+  public ResponseEntity<Error> handleRequestErrorHandler(Exception e) {
+    Error error = new Error();
+    error.setError(e.getMessage());
+    return ResponseEntity.badRequest().body(error);
   }
 }
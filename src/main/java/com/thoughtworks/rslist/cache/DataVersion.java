@@ -0,0 +1,42 @@
+package com.thoughtworks.rslist.cache;
+
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.EntityChange;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.listener.TradeChange;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// 全局数据版本：投票、购买、新增热搜、删除用户等任何提交都会加一，用来生成读接口的 ETag。
+// 在其他监听器之后推进，拿到新版本号时索引、缓存和快照都已经是新数据。
+// ETag 带上启动时间，避免重启后版本号从头计数与旧的 ETag 重复。
+@Component
+public class DataVersion {
+    private final String bootId = Long.toHexString(System.currentTimeMillis());
+    private final AtomicLong version = new AtomicLong();
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.VERSION)
+    public void onChange(RsEventChange change) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.VERSION)
+    public void onChange(TradeChange change) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.VERSION)
+    public void onChange(EntityChange change) {
+        version.incrementAndGet();
+    }
+
+    public String etag() {
+        return "\"" + bootId + "-" + version.get() + "\"";
+    }
+}
@@ -0,0 +1,162 @@
+package com.thoughtworks.rslist.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.rslist.index.RsEventIndex;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 热搜排名快照：排名变化后等待 debounce 间隔，把 /rs/sortedevents 和 /rs/list 的前几页渲染成 JSON 字节，
+// 控制器直接输出这些字节，不必每次请求都重新序列化。
+// 默认只在快照之后没有新的变更时使用快照，serve-stale 打开后允许返回最多落后一个 debounce 间隔的快照。
+@Component
+public class RankingSnapshotPublisher {
+    private final RsEventIndex rsEventIndex;
+    private final ObjectMapper objectMapper;
+    private final TaskScheduler taskScheduler;
+    private final boolean enabled;
+    private final long debounceMillis;
+    private final int pageSize;
+    private final int pageCount;
+    private final boolean serveStale;
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    public RankingSnapshotPublisher(RsEventIndex rsEventIndex, ObjectMapper objectMapper, TaskScheduler taskScheduler,
+                                    @Value("${rs.snapshot.enabled:true}") boolean enabled,
+                                    @Value("${rs.snapshot.debounce:200}") long debounceMillis,
+                                    @Value("${rs.snapshot.page-size:10}") int pageSize,
+                                    @Value("${rs.snapshot.pages:5}") int pageCount,
+                                    @Value("${rs.snapshot.serve-stale:false}") boolean serveStale) {
+        this.rsEventIndex = rsEventIndex;
+        this.objectMapper = objectMapper;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.debounceMillis = debounceMillis;
+        this.pageSize = pageSize;
+        this.pageCount = pageCount;
+        this.serveStale = serveStale;
+    }
+
+    @PostConstruct
+    public void init() {
+        schedulePublish();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.SNAPSHOT)
+    public void onChange(RsEventChange change) {
+        changes.incrementAndGet();
+        schedulePublish();
+    }
+
+    // 当前可用的 /rs/sortedevents 快照，没有时返回 null
+    public byte[] sorted() {
+        Snapshot current = usable();
+        return current == null ? null : current.sorted;
+    }
+
+    // /rs/list?start=&end= 对应的快照页，没有时返回 null
+    public Page page(int start, int end) {
+        Snapshot current = usable();
+        if (current == null || end - start + 1 != pageSize) {
+            return null;
+        }
+        return current.pagesByStart.get(start);
+    }
+
+    // /rs/list?cursor=&size= 对应的快照页，lastId 为游标中上一页最后一条热搜的 id
+    public Page pageAfter(int lastId, int size) {
+        Snapshot current = usable();
+        if (current == null || size != pageSize) {
+            return null;
+        }
+        return current.pagesAfter.get(lastId);
+    }
+
+    public boolean isClean() {
+        Snapshot current = snapshot;
+        return current != null && current.version == changes.get();
+    }
+
+    public void publish() {
+        scheduled.set(false);
+        // 先读版本再读索引，期间有新的变更时快照只会被当作过期，不会被当作最新
+        long version = changes.get();
+        Map<Integer, Page> pagesByStart = new HashMap<>();
+        Map<Integer, Page> pagesAfter = new HashMap<>();
+        int previousLastId = 0;
+        for (int i = 0; i < pageCount; i++) {
+            int start = i * pageSize + 1;
+            int lastId = rsEventIndex.idAt(start + pageSize - 1);
+            if (lastId == 0) {
+                break;
+            }
+            Page page = new Page(write(rsEventIndex.listed(start - 1, start - 1 + pageSize)), lastId);
+            pagesByStart.put(start, page);
+            if (i > 0) {
+                pagesAfter.put(previousLastId, page);
+            }
+            previousLastId = lastId;
+        }
+        byte[] sorted = write(rsEventIndex.ranked(0, rsEventIndex.size()));
+        snapshot = new Snapshot(version, sorted,
+                Collections.unmodifiableMap(pagesByStart), Collections.unmodifiableMap(pagesAfter));
+    }
+
+    private Snapshot usable() {
+        if (!enabled) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        if (current == null || (!serveStale && current.version != changes.get())) {
+            return null;
+        }
+        return current;
+    }
+
+    private void schedulePublish() {
+        if (enabled && scheduled.compareAndSet(false, true)) {
+            taskScheduler.schedule(this::publish, Instant.now().plusMillis(debounceMillis));
+        }
+    }
+
+    private byte[] write(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Page {
+        private final byte[] body;
+        private final int lastId;
+    }
+
+    @AllArgsConstructor
+    private static class Snapshot {
+        private final long version;
+        private final byte[] sorted;
+        private final Map<Integer, Page> pagesByStart;
+        private final Map<Integer, Page> pagesAfter;
+    }
+}
@@ -0,0 +1,37 @@
+package com.thoughtworks.rslist.cache;
+
+import com.thoughtworks.rslist.datasource.ReplicaRoutingDataSource;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.function.Supplier;
+
+// /rs/list、/rs/{index}、/rs/sortedevents 的读缓存，任何热搜变更提交后整体失效。
+// 加载时读主库，失效后重新加载不会从落后的从库读回变更之前的数据
+@Component
+public class RsEventReadCache {
+    private final SingleFlightCache<String, Object> cache;
+
+    public RsEventReadCache(@Value("${rs.cache.max-size:1000}") int maxSize) {
+        this.cache = new SingleFlightCache<>(maxSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        return (T) cache.get(key, () -> ReplicaRoutingDataSource.readFromPrimary(loader));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.CACHE)
+    public void onChange(RsEventChange change) {
+        cache.invalidateAll();
+    }
+
+    public SingleFlightCache.Stats stats() {
+        return cache.stats();
+    }
+}
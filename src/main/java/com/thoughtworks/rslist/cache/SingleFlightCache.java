@@ -0,0 +1,111 @@
+package com.thoughtworks.rslist.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// 按访问顺序淘汰的有界缓存，同一个 key 的并发未命中只触发一次加载
+public class SingleFlightCache<K, V> {
+    private final Map<K, V> values;
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    // 每次失效加一，失效前开始的加载结果不再写入缓存
+    private volatile long generation;
+
+    public SingleFlightCache(int maxSize) {
+        this.values = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        synchronized (values) {
+            V value = values.get(key);
+            if (value != null) {
+                hits.incrementAndGet();
+                return value;
+            }
+        }
+        misses.incrementAndGet();
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+        long startGeneration = generation;
+        long start = System.nanoTime();
+        try {
+            V value = loader.get();
+            loads.incrementAndGet();
+            loadNanos.addAndGet(System.nanoTime() - start);
+            synchronized (values) {
+                if (value != null && startGeneration == generation) {
+                    values.put(key, value);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (values) {
+            generation++;
+            values.clear();
+        }
+        loading.clear();
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (values) {
+            size = values.size();
+        }
+        return new Stats(hits.get(), misses.get(), loads.get(), loadNanos.get() / 1_000_000, size);
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException | CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long loads;
+        private final long loadTimeMillis;
+        private final int size;
+    }
+}
@@ -0,0 +1,63 @@
+package com.thoughtworks.rslist.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// 配置了 rs.datasource.replica.url 时启用读写分离：spring.datasource 作为主库，
+// rs.datasource.replica 作为从库，各自一个连接池。没有配置时沿用 Spring Boot 默认的单个数据源。
+@Configuration
+@ConditionalOnProperty("rs.datasource.replica.url")
+public class ReplicaDataSourceConfig {
+    // 连接池包在路由数据源里面，不是单独的 bean，由这里负责关闭
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private ReplicaRoutingDataSource routing;
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${rs.datasource.replica.url}") String replicaUrl,
+                                 @Value("${rs.datasource.replica.username:${spring.datasource.username:}}") String replicaUsername,
+                                 @Value("${rs.datasource.replica.password:${spring.datasource.password:}}") String replicaPassword,
+                                 @Value("${rs.datasource.replica.driver-class-name:}") String replicaDriverClassName,
+                                 @Value("${rs.datasource.replica.lag-tolerance:1000}") long lagToleranceMillis,
+                                 @Value("${rs.datasource.replica.retry-after:5000}") long retryAfterMillis) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .driverClassName(replicaDriverClassName.isEmpty()
+                        ? properties.determineDriverClassName() : replicaDriverClassName)
+                .build();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        pools.add(primary);
+        pools.add(replica);
+        routing = new ReplicaRoutingDataSource(primary, replica, lagToleranceMillis, retryAfterMillis);
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Scheduled(fixedDelayString = "${rs.datasource.replica.heartbeat-interval:500}")
+    public void heartbeat() {
+        if (routing != null) {
+            routing.heartbeat();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,159 @@
+package com.thoughtworks.rslist.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+// 只读事务的连接取自从库，其余（写事务、无事务的语句）取自主库。
+// 从库延迟用心跳测量：heartbeat() 定期往主库的 replica_heartbeat 表写入当前时间，
+// 从库已复制到上一次写入的值时延迟记为 0，否则记为当前时间与从库上的值之差，精度是一个心跳间隔。
+// 测得的延迟不超过 lag-tolerance 毫秒时只读事务才走从库，还没测到或测量失败时走主库；
+// 从库取连接失败时回退到主库，并在 retry-after 毫秒内不再尝试从库。
+// 延迟在容忍范围内的从库仍可能还没复制到刚提交的写，读结果会被缓存或随 ETag 返回的查询放在 readFromPrimary 里，
+// 否则旧数据会留在缓存里、被 304 固定住，直到下一次写入。
+// 需要套一层 LazyConnectionDataSourceProxy，事务的只读标记在真正取连接之前才已经设置好。
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+    private static final String CREATE_HEARTBEAT =
+            "create table if not exists replica_heartbeat (id int primary key, beat bigint not null)";
+    // 多个应用实例共用同一行，从库上的值不早于本实例写入的值就说明已经追上
+    private static final String UPDATE_HEARTBEAT = "update replica_heartbeat set beat = ? where id = 1";
+    private static final String INSERT_HEARTBEAT = "insert into replica_heartbeat (id, beat) values (1, ?)";
+    private static final String SELECT_HEARTBEAT = "select beat from replica_heartbeat where id = 1";
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long lagToleranceMillis;
+    private final long retryAfterMillis;
+    private volatile boolean heartbeatCreated;
+    private volatile long lastBeat;
+    private volatile long replicaLagMillis = Long.MAX_VALUE;
+    private volatile long replicaDownUntil;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long lagToleranceMillis,
+                                    long retryAfterMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.lagToleranceMillis = lagToleranceMillis;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (useReplica()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                replicaUnavailable(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (useReplica()) {
+            try {
+                return replica.getConnection(username, password);
+            } catch (SQLException e) {
+                replicaUnavailable(e);
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    // reader 中取的连接都来自主库，可以嵌套
+    public static <T> T readFromPrimary(Supplier<T> reader) {
+        Boolean outer = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(true);
+        try {
+            return reader.get();
+        } finally {
+            if (outer == null) {
+                PRIMARY_ONLY.remove();
+            }
+        }
+    }
+
+    // 最近一次心跳测得的从库延迟，还没测到或测量失败时是 Long.MAX_VALUE
+    public long getReplicaLagMillis() {
+        return replicaLagMillis;
+    }
+
+    // 先读从库，和上一次写入主库的心跳比较，再写入新的心跳：复制在一个心跳间隔内完成时延迟记为 0
+    public void heartbeat() {
+        replicaLagMillis = measureLag(lastBeat);
+        try {
+            lastBeat = writeHeartbeat();
+        } catch (SQLException e) {
+            lastBeat = 0;
+            log.warn("failed to write replica heartbeat on primary: {}", e.getMessage());
+        }
+    }
+
+    private long measureLag(long written) {
+        if (written == 0) {
+            return Long.MAX_VALUE;
+        }
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(SELECT_HEARTBEAT)) {
+            if (!resultSet.next()) {
+                return Long.MAX_VALUE;
+            }
+            long replicated = resultSet.getLong(1);
+            return replicated >= written ? 0 : Math.max(0, System.currentTimeMillis() - replicated);
+        } catch (SQLException e) {
+            // 从库还没复制到心跳表时也会走到这里
+            log.warn("failed to read replica heartbeat: {}", e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private long writeHeartbeat() throws SQLException {
+        try (Connection connection = primary.getConnection()) {
+            if (!heartbeatCreated) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(CREATE_HEARTBEAT);
+                }
+                heartbeatCreated = true;
+            }
+            long beat = System.currentTimeMillis();
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_HEARTBEAT)) {
+                update.setLong(1, beat);
+                if (update.executeUpdate() == 0) {
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT_HEARTBEAT)) {
+                        insert.setLong(1, beat);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            return beat;
+        }
+    }
+
+    private boolean useReplica() {
+        return PRIMARY_ONLY.get() == null
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && replicaLagMillis <= lagToleranceMillis
+                && System.currentTimeMillis() >= replicaDownUntil;
+    }
+
+    private void replicaUnavailable(SQLException e) {
+        replicaDownUntil = System.currentTimeMillis() + retryAfterMillis;
+        log.warn("replica unavailable, reading from primary for {} ms: {}", retryAfterMillis, e.getMessage());
+    }
+}
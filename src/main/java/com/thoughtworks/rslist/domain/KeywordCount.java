@@ -0,0 +1,15 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.*;
+
+// /rs/keywords/top 中的单个关键字，voteNum 为估计的总票数，真实值在 [voteNum - error, voteNum] 之间
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class KeywordCount {
+    private String keyword;
+    private long voteNum;
+    private long error;
+}
@@ -0,0 +1,16 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.*;
+
+// 排名索引加载用的投影，id 是热搜自身的 id，只取排名需要的列
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RankedRsEvent {
+    private int id;
+    private String eventName;
+    private String keyword;
+    private int voteNum;
+    private int rsRank;
+}
@@ -0,0 +1,15 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.*;
+
+// 推送给 /rs/stream 订阅者的单条热搜变化，position 为 0 表示热搜已不在榜上
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RankingDelta {
+    private int id;
+    private int voteNum;
+    private int position;
+}
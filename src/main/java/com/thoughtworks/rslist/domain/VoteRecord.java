@@ -0,0 +1,22 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// 投票记录查询的投影，只取需要的列，不加载关联的用户和热搜
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class VoteRecord {
+    private int id;
+    private int userId;
+    private int rsEventId;
+    private LocalDateTime time;
+    private int voteNum;
+
+    public Vote toVote() {
+        return Vote.builder().userId(userId).rsEventId(rsEventId).time(time).voteNum(voteNum).build();
+    }
+}
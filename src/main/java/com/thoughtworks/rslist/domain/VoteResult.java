@@ -0,0 +1,15 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VoteResult {
+    private int userId;
+    private int rsEventId;
+    private int voteNum;
+    private boolean success;
+}
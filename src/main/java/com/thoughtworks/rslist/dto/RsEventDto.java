@@ -1,6 +1,9 @@
 package com.thoughtworks.rslist.dto;
 
+import com.thoughtworks.rslist.listener.RsEventEntityListener;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 
@@ -10,6 +13,8 @@ import javax.persistence.*;
 @AllArgsConstructor
 @NoArgsConstructor
 @Table(name = "rsEvent")
+@EntityListeners(RsEventEntityListener.class)
+@DynamicUpdate
 public class RsEventDto {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -17,13 +22,21 @@ public class RsEventDto {
     private String eventName;
     private String keyword;
     private int voteNum;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private UserDto user;
 
+    // mappedBy 一侧的一对一无法懒加载，需要的查询通过 EntityGraph 一并 join 取出
     @OneToOne(cascade = CascadeType.ALL, mappedBy = "rsEvent")
     @JoinColumn(name = "trade_id")
     private TradeDto trade;
 
     private int rsRank;
+
+    // 加载或上次保存时的票数，保存时据此判断这次是否写入了票数，不持久化
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Integer savedVoteNum;
 }
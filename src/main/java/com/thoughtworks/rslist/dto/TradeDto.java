@@ -1,15 +1,18 @@
 package com.thoughtworks.rslist.dto;
 
+import com.thoughtworks.rslist.listener.TradeEntityListener;
 import lombok.*;
 
 import javax.persistence.*;
 
+// 每个排名当前的持有者，出价更高时原地更新；完整的购买历史见 TradeRecordDto
 @Entity
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "trade")
+@Table(name = "trade", indexes = @Index(columnList = "rank", unique = true))
+@EntityListeners(TradeEntityListener.class)
 public class TradeDto {
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -18,7 +21,7 @@ public class TradeDto {
 
     private int rank;
 
-    @OneToOne(optional = false, cascade = CascadeType.REMOVE)
+    @OneToOne(optional = false)
     @JoinColumn(name = "rsEvent_id")
     private RsEventDto rsEvent;
 }
@@ -0,0 +1,25 @@
+package com.thoughtworks.rslist.dto;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// 热搜购买流水，只追加不删除；被更高出价替换的记录标记为 superseded
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "trade_record", indexes = @Index(columnList = "rank, superseded"))
+public class TradeRecordDto {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+    private int amount;
+    private int rank;
+    // 只记录热搜 id，不建外键，热搜删除后流水仍然保留
+    private int rsEventId;
+    private LocalDateTime localDateTime;
+    private boolean superseded;
+}
@@ -1,5 +1,6 @@
 package com.thoughtworks.rslist.dto;
 
+import com.thoughtworks.rslist.listener.EntityChangeListener;
 import lombok.*;
 
 import javax.persistence.*;
@@ -10,12 +11,16 @@ import java.time.LocalDateTime;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "vote")
+@Table(name = "vote", indexes = @Index(columnList = "user_id, rs_event_id, localDateTime, id"))
+@EntityListeners(EntityChangeListener.class)
 public class VoteDto {
+    // IDENTITY 主键会让 Hibernate 关闭批量插入，这里改用号段分配的序列
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vote_seq")
+    @SequenceGenerator(name = "vote_seq", sequenceName = "vote_seq", allocationSize = 50)
     private int id;
 
+    @Column(nullable = false)
     private LocalDateTime localDateTime;
 
     private int num;
@@ -0,0 +1,22 @@
+package com.thoughtworks.rslist.dto;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+// 热搜票数的分片计数行，每条热搜最多 rs.vote.shards.count 行，定期合并回 rsEvent.voteNum
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "vote_shard", uniqueConstraints = @UniqueConstraint(columnNames = {"rsEventId", "shard"}))
+public class VoteShardDto {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+    // 与投票流水一样只记录热搜 id，不建外键，热搜删除后由合并任务清理
+    private int rsEventId;
+    private int shard;
+    private int voteNum;
+}
@@ -0,0 +1,22 @@
+package com.thoughtworks.rslist.exception;
+
+public class TooManyRequestsException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private String error;
+  private long retryAfterSeconds;
+
+  public TooManyRequestsException(String error, long retryAfterSeconds) {
+    this.error = error;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  @Override
+  public String getMessage() {
+    return error;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
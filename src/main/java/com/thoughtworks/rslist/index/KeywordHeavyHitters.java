@@ -0,0 +1,57 @@
+package com.thoughtworks.rslist.index;
+
+import com.thoughtworks.rslist.domain.KeywordCount;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// 按关键字汇总票数的热门关键字统计，用 Space-Saving 在 rs.keywords.capacity 个计数器内近似计算，
+// 不需要对 vote 表做 GROUP BY。启动时用各热搜的当前票数初始化，之后累加提交后的每次投票；
+// 热搜删除后已计入的票数不会扣除。
+@Component
+public class KeywordHeavyHitters {
+    private final RsEventIndex rsEventIndex;
+    private final SpaceSaving<String> sketch;
+
+    public KeywordHeavyHitters(RsEventIndex rsEventIndex, @Value("${rs.keywords.capacity:1000}") int capacity) {
+        this.rsEventIndex = rsEventIndex;
+        this.sketch = new SpaceSaving<>(capacity);
+    }
+
+    // 票数多的关键字先加入，计数器不够时它们的计数仍是精确的
+    @PostConstruct
+    public synchronized void load() {
+        sketch.clear();
+        rsEventIndex.votesByKeyword().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> sketch.add(entry.getKey(), entry.getValue()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.INDEX)
+    public void onChange(RsEventChange change) {
+        if (change.getType() != RsEventChange.Type.VOTED) {
+            return;
+        }
+        String keyword = rsEventIndex.keywordOf(change.getId());
+        if (keyword != null) {
+            synchronized (this) {
+                sketch.add(keyword, change.getVoteNum());
+            }
+        }
+    }
+
+    public synchronized List<KeywordCount> top(int k) {
+        return sketch.top(k).stream()
+                .map(counter -> new KeywordCount(counter.getKey(), counter.getCount(), counter.getError()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,182 @@
+package com.thoughtworks.rslist.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// 带子树大小的 treap，支持 O(log n) 的插入、删除、按名次取值与求名次。
+// 非线程安全，由调用方加锁。
+public class OrderStatisticTree<T> {
+    private final Comparator<? super T> comparator;
+    private Node<T> root;
+
+    public OrderStatisticTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public void add(T value) {
+        root = insert(root, new Node<>(value));
+    }
+
+    public boolean remove(T value) {
+        int before = size();
+        root = delete(root, value);
+        return size() < before;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    // 第 index 个元素（从 0 开始）
+    public T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    // value 在树中的名次（从 0 开始），不存在时返回 -1
+    public int indexOf(T value) {
+        Node<T> node = root;
+        int index = 0;
+        while (node != null) {
+            int cmp = comparator.compare(value, node.value);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    // 名次在 [from, to) 之间的元素，代价 O(log n + k)
+    public List<T> range(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, size());
+        List<T> result = new ArrayList<>(Math.max(to - from, 0));
+        if (from < to) {
+            collect(root, from, to, result);
+        }
+        return result;
+    }
+
+    private void collect(Node<T> node, int from, int to, List<T> result) {
+        if (node == null || from >= to) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (from < leftSize) {
+            collect(node.left, from, Math.min(to, leftSize), result);
+        }
+        if (from <= leftSize && leftSize < to) {
+            result.add(node.value);
+        }
+        if (to > leftSize + 1) {
+            collect(node.right, Math.max(from - leftSize - 1, 0), to - leftSize - 1, result);
+        }
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> fresh) {
+        if (node == null) {
+            return fresh;
+        }
+        if (comparator.compare(fresh.value, node.value) < 0) {
+            node.left = insert(node.left, fresh);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, fresh);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        return update(node);
+    }
+
+    private Node<T> delete(Node<T> node, T value) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = comparator.compare(value, node.value);
+        if (cmp < 0) {
+            node.left = delete(node.left, value);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            return merge(node.left, node.right);
+        }
+        return update(node);
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = update(node);
+        return update(left);
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = update(node);
+        return update(right);
+    }
+
+    private static <T> Node<T> update(Node<T> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node<T> {
+        final T value;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.thoughtworks.rslist.index;
+
+import com.thoughtworks.rslist.listener.TradeChange;
+import com.thoughtworks.rslist.repository.TradeRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 各排名当前的成交价，启动时从 trade 表加载，购买记录提交后更新。
+// 出价不高于当前价的购买可以在访问数据库前直接拒绝。
+@Component
+public class RankPriceBook {
+    private final TradeRepository tradeRepository;
+    private final Map<Integer, Price> prices = new ConcurrentHashMap<>();
+
+    public RankPriceBook(TradeRepository tradeRepository) {
+        this.tradeRepository = tradeRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        prices.clear();
+        tradeRepository.findAll().forEach(item -> prices.put(item.getRank(), new Price(item.getId(), item.getAmount())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(TradeChange change) {
+        if (change.isRemoved()) {
+            prices.computeIfPresent(change.getRank(),
+                    (rank, price) -> price.getTradeId() == change.getId() ? null : price);
+        } else {
+            prices.put(change.getRank(), new Price(change.getId(), change.getAmount()));
+        }
+    }
+
+    // 该排名无人购买或出价高于当前价时才可能买到
+    public boolean mayWin(int rank, int amount) {
+        Price price = prices.get(rank);
+        return price == null || amount > price.getAmount();
+    }
+
+    public Map<Integer, Integer> prices() {
+        Map<Integer, Integer> result = new TreeMap<>();
+        prices.forEach((rank, price) -> result.put(rank, price.getAmount()));
+        return result;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Price {
+        private final int tradeId;
+        private final int amount;
+    }
+}
@@ -0,0 +1,383 @@
+package com.thoughtworks.rslist.index;
+
+import com.thoughtworks.rslist.datasource.ReplicaRoutingDataSource;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteFoldLock;
+import com.thoughtworks.rslist.service.WriteBehindVoteCounter;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+// 热搜排名索引：未购买的热搜按票数降序（同票按 id 升序）放在顺序统计树中，
+// 购买的热搜按 rsRank 覆盖到对应位置，规则与原先的全量排序 + List.add(k, v) 一致。
+// 另按 id 升序维护一棵顺序统计树，用于 /rs/{index} 的按位置查询。
+// 票数包含延迟写计数器中尚未写回数据库、以及分片计数中尚未合并的部分。
+@Component
+public class RsEventIndex {
+    private static final Comparator<Entry> BY_VOTE_DESC =
+            Comparator.comparingInt(Entry::getVoteNum).reversed().thenComparingInt(Entry::getId);
+    // topAmong 中 ids 数量乘以该值不小于热搜总数时按票数顺序扫描
+    private static final int DENSE_RATIO = 64;
+    private static final int SCAN_CHUNK = 256;
+
+    private final RsEventRepository rsEventRepository;
+    private final WriteBehindVoteCounter voteCounter;
+    private final ShardedVoteCounter shardedVoteCounter;
+    private final VoteFoldLock foldLock;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final OrderStatisticTree<Entry> organic = new OrderStatisticTree<>(BY_VOTE_DESC);
+    private final OrderStatisticTree<Entry> byId = new OrderStatisticTree<>(Comparator.comparingInt(Entry::getId));
+    // rsRank -> (id -> entry)，同一排名有多条时只展示 id 最大的一条
+    private final TreeMap<Integer, TreeMap<Integer, Entry>> paid = new TreeMap<>();
+
+    public RsEventIndex(RsEventRepository rsEventRepository, WriteBehindVoteCounter voteCounter,
+                        ShardedVoteCounter shardedVoteCounter, VoteFoldLock foldLock) {
+        this.rsEventRepository = rsEventRepository;
+        this.voteCounter = voteCounter;
+        this.shardedVoteCounter = shardedVoteCounter;
+        this.foldLock = foldLock;
+    }
+
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            organic.clear();
+            byId.clear();
+            paid.clear();
+            foldLock.read(() -> {
+                ReplicaRoutingDataSource.readFromPrimary(rsEventRepository::findAllRanked).forEach(item -> put(
+                        new Entry(item.getId(), item.getEventName(), item.getKeyword(),
+                                item.getVoteNum() + pending(item.getId()), item.getRsRank())));
+                return null;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.INDEX)
+    public void onChange(RsEventChange change) {
+        lock.writeLock().lock();
+        try {
+            switch (change.getType()) {
+                case SAVED:
+                    // 这次保存没有写入票数时保留索引中的票数：保存的实体可能是在并发投票提交之前加载的，
+                    // 其中的票数已经过期；写入了票数时数据库里就是这个值，以它为准
+                    Entry saved = remove(change.getId());
+                    int voteNum = saved != null && !change.isVoteNumWritten()
+                            ? saved.getVoteNum() : change.getVoteNum() + pending(change.getId());
+                    put(new Entry(change.getId(), change.getEventName(), change.getKeyword(), voteNum,
+                            change.getRsRank()));
+                    break;
+                case REMOVED:
+                    remove(change.getId());
+                    break;
+                case VOTED:
+                    Entry entry = remove(change.getId());
+                    if (entry != null) {
+                        put(entry.withVoteNum(entry.getVoteNum() + change.getVoteNum()));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return organic.size() + paid.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 按 id 升序的第 position 条热搜（从 1 开始），不存在时返回 null
+    public RsEvent at(int position) {
+        lock.readLock().lock();
+        try {
+            if (position < 1 || position > byId.size()) {
+                return null;
+            }
+            return byId.get(position - 1).toRsEvent();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 按 id 升序位于 [from, to) 之间的热搜（从 0 开始），与 /rs/list 的分页顺序一致
+    public List<RsEvent> listed(int from, int to) {
+        lock.readLock().lock();
+        try {
+            to = Math.min(to, byId.size());
+            if (from < 0 || from >= to) {
+                return new ArrayList<>();
+            }
+            return byId.range(from, to).stream().map(Entry::toRsEvent).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids 中的热搜按票数降序（同票 id 升序）排列后的 [from, from + size)，rsRank 为 0。
+    // ids 占全部热搜的比例较高时沿票数顺序扫描，凑够即停止；比例较低时用大小为 from + size 的堆挑选
+    public List<RsEvent> topAmong(Set<Integer> ids, int from, int size) {
+        lock.readLock().lock();
+        try {
+            int limit = (int) Math.min((long) from + size, ids.size());
+            if (from < 0 || from >= limit) {
+                return new ArrayList<>();
+            }
+            List<Entry> top = (long) ids.size() * DENSE_RATIO >= entries.size()
+                    ? scanTop(ids, limit) : selectTop(ids, limit);
+            return top.subList(Math.min(from, top.size()), top.size()).stream()
+                    .map(Entry::toRsEvent).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 热搜的关键字，不存在时返回 null
+    public String keywordOf(int id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(id);
+            return entry == null ? null : entry.getKeyword();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 各关键字下全部热搜的票数之和
+    public Map<String, Long> votesByKeyword() {
+        lock.readLock().lock();
+        try {
+            return entries.values().stream().filter(entry -> entry.getKeyword() != null)
+                    .collect(Collectors.groupingBy(Entry::getKeyword, Collectors.summingLong(Entry::getVoteNum)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 按 id 升序的第 position 条热搜的 id（从 1 开始），不存在时返回 0
+    public int idAt(int position) {
+        lock.readLock().lock();
+        try {
+            if (position < 1 || position > byId.size()) {
+                return 0;
+            }
+            return byId.get(position - 1).getId();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 排名在 [from, to) 之间的热搜（从 0 开始），rsRank 为最终名次
+    public List<RsEvent> ranked(int from, int to) {
+        lock.readLock().lock();
+        try {
+            int organicSize = organic.size();
+            to = Math.min(to, organicSize + paid.size());
+            if (from < 0 || from >= to) {
+                return new ArrayList<>();
+            }
+            // 按排名升序插入的购买热搜，最终位置为 min(rsRank - 1, 未购买数 + 已插入数)，且严格递增
+            Map<Integer, Entry> paidInRange = new HashMap<>();
+            int paidBefore = 0;
+            int inserted = 0;
+            for (Map.Entry<Integer, TreeMap<Integer, Entry>> slot : paid.entrySet()) {
+                int position = Math.min(slot.getKey() - 1, organicSize + inserted);
+                inserted++;
+                if (position < from) {
+                    paidBefore++;
+                } else if (position < to) {
+                    paidInRange.put(position, slot.getValue().lastEntry().getValue());
+                } else {
+                    break;
+                }
+            }
+            int organicFrom = from - paidBefore;
+            List<Entry> organicSlice =
+                    organic.range(organicFrom, organicFrom + (to - from) - paidInRange.size());
+
+            List<RsEvent> result = new ArrayList<>(to - from);
+            int next = 0;
+            for (int position = from; position < to; position++) {
+                Entry entry = paidInRange.get(position);
+                if (entry == null) {
+                    entry = organicSlice.get(next++);
+                }
+                RsEvent rsEvent = entry.toRsEvent();
+                rsEvent.setRsRank(position + 1);
+                result.add(rsEvent);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 单条热搜当前的票数和名次（rsRank 从 1 开始），不存在或被同排名的购买热搜挡住时返回 null
+    public RsEvent rankOf(int id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            }
+            int organicSize = organic.size();
+            int position;
+            if (entry.getRsRank() == 0) {
+                // 未购买热搜在未购买序列中的下标，加上排在它之前（含插在该位置上）的购买热搜数
+                position = organic.indexOf(entry);
+                int inserted = 0;
+                for (Integer rank : paid.keySet()) {
+                    if (Math.min(rank - 1, organicSize + inserted) > position) {
+                        break;
+                    }
+                    position++;
+                    inserted++;
+                }
+            } else {
+                TreeMap<Integer, Entry> slot = paid.get(entry.getRsRank());
+                if (slot.lastKey() != id) {
+                    return null;
+                }
+                int inserted = paid.headMap(entry.getRsRank()).size();
+                position = Math.min(entry.getRsRank() - 1, organicSize + inserted);
+            }
+            RsEvent rsEvent = entry.toRsEvent();
+            rsEvent.setRsRank(position + 1);
+            return rsEvent;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(Entry entry) {
+        remove(entry.getId());
+        entries.put(entry.getId(), entry);
+        byId.add(entry);
+        if (entry.getRsRank() == 0) {
+            organic.add(entry);
+        } else {
+            paid.computeIfAbsent(entry.getRsRank(), rank -> new TreeMap<>()).put(entry.getId(), entry);
+        }
+    }
+
+    private Entry remove(int id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        byId.remove(entry);
+        if (entry.getRsRank() == 0) {
+            organic.remove(entry);
+        } else {
+            TreeMap<Integer, Entry> slot = paid.get(entry.getRsRank());
+            slot.remove(id);
+            if (slot.isEmpty()) {
+                paid.remove(entry.getRsRank());
+            }
+        }
+        return entry;
+    }
+
+    private List<Entry> selectTop(Set<Integer> ids, int limit) {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(limit, BY_VOTE_DESC.reversed());
+        for (int id : ids) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(entry);
+            } else if (BY_VOTE_DESC.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<Entry> top = new ArrayList<>(heap);
+        top.sort(BY_VOTE_DESC);
+        return top;
+    }
+
+    // 未购买的热搜已按票数排好，购买的热搜数量很少，挑出命中的排好序后归并进去
+    private List<Entry> scanTop(Set<Integer> ids, int limit) {
+        List<Entry> paidMatched = new ArrayList<>();
+        paid.values().forEach(slot -> slot.values().stream()
+                .filter(entry -> ids.contains(entry.getId()))
+                .forEach(paidMatched::add));
+        paidMatched.sort(BY_VOTE_DESC);
+        List<Entry> top = new ArrayList<>(limit);
+        int nextPaid = 0;
+        for (int position = 0; position < organic.size() && top.size() < limit; position += SCAN_CHUNK) {
+            for (Entry entry : organic.range(position, Math.min(position + SCAN_CHUNK, organic.size()))) {
+                while (nextPaid < paidMatched.size() && top.size() < limit
+                        && BY_VOTE_DESC.compare(paidMatched.get(nextPaid), entry) < 0) {
+                    top.add(paidMatched.get(nextPaid++));
+                }
+                if (top.size() < limit && ids.contains(entry.getId())) {
+                    top.add(entry);
+                }
+            }
+        }
+        while (nextPaid < paidMatched.size() && top.size() < limit) {
+            top.add(paidMatched.get(nextPaid++));
+        }
+        return top;
+    }
+
+    private int pending(int id) {
+        return voteCounter.pending(id) + shardedVoteCounter.pending(id);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Entry {
+        private final int id;
+        private final String eventName;
+        private final String keyword;
+        private final int voteNum;
+        private final int rsRank;
+
+        Entry withVoteNum(int voteNum) {
+            return new Entry(id, eventName, keyword, voteNum, rsRank);
+        }
+
+        RsEvent toRsEvent() {
+            return RsEvent.builder()
+                    .eventName(eventName)
+                    .keyword(keyword)
+                    .userId(id)
+                    .voteNum(voteNum)
+                    .build();
+        }
+    }
+}
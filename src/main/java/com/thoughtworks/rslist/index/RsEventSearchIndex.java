@@ -0,0 +1,174 @@
+package com.thoughtworks.rslist.index;
+
+import com.thoughtworks.rslist.datasource.ReplicaRoutingDataSource;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 热搜名称和关键字的倒排索引：按单字和相邻两字（bigram）建立 gram -> 热搜 id 的倒排表，
+// 中文不分词也能做子串搜索。查询取各 bigram 倒排表的交集，再逐条核对是否真的包含查询串，
+// 票数和排序由 RsEventIndex 完成，结果按票数降序、同票按 id 升序。
+@Component
+public class RsEventSearchIndex {
+    private final RsEventRepository rsEventRepository;
+    private final RsEventIndex rsEventIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+
+    public RsEventSearchIndex(RsEventRepository rsEventRepository, RsEventIndex rsEventIndex) {
+        this.rsEventRepository = rsEventRepository;
+        this.rsEventIndex = rsEventIndex;
+    }
+
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            postings.clear();
+            ReplicaRoutingDataSource.readFromPrimary(rsEventRepository::findAllRanked)
+                    .forEach(item -> put(item.getId(), item.getEventName(), item.getKeyword()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.INDEX)
+    public void onChange(RsEventChange change) {
+        if (change.getType() == RsEventChange.Type.VOTED) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (change.getType() == RsEventChange.Type.SAVED) {
+                put(change.getId(), change.getEventName(), change.getKeyword());
+            } else {
+                remove(change.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 名称或关键字包含 query（忽略大小写）的热搜，按票数排序后取 [from, from + size)
+    public List<RsEvent> search(String query, int from, int size) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            return rsEventIndex.topAmong(matches(normalized), from, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 一两个字的查询本身就是一个 gram，倒排表即结果；更长的查询从最短的倒排表开始求交集，再核对子串
+    private Set<Integer> matches(String query) {
+        List<Set<Integer>> lists = new ArrayList<>();
+        for (String gram : queryGrams(query)) {
+            Set<Integer> posting = postings.get(gram);
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            lists.add(posting);
+        }
+        if (query.length() <= 2) {
+            return lists.get(0);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        result.removeIf(id -> !documents.get(id).contains(query));
+        return result;
+    }
+
+    private void put(int id, String eventName, String keyword) {
+        remove(id);
+        Document document = new Document(normalize(eventName), normalize(keyword));
+        documents.put(id, document);
+        for (String gram : document.grams()) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void remove(int id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (String gram : document.grams()) {
+            Set<Integer> posting = postings.get(gram);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // 单字查询用单字倒排表，否则用查询串中的全部 bigram
+    private static Set<String> queryGrams(String query) {
+        Set<String> grams = new HashSet<>();
+        if (query.length() == 1) {
+            grams.add(query);
+        } else {
+            for (int i = 0; i + 1 < query.length(); i++) {
+                grams.add(query.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    private static void addGrams(String text, Set<String> grams) {
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Document {
+        private final String eventName;
+        private final String keyword;
+
+        boolean contains(String query) {
+            return eventName.contains(query) || keyword.contains(query);
+        }
+
+        Set<String> grams() {
+            Set<String> grams = new HashSet<>();
+            addGrams(eventName, grams);
+            addGrams(keyword, grams);
+            return grams;
+        }
+    }
+}
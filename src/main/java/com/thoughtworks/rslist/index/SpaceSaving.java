@@ -0,0 +1,82 @@
+package com.thoughtworks.rslist.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Space-Saving 频繁项统计：最多保留 capacity 个计数器，计数器已满时新元素顶替计数最小的一个，
+// 并把被顶替的计数记为自己的误差。每个计数器的真实值在 [count - error, count] 之间，error 不超过 total / capacity，
+// 真实值超过 total / capacity 的元素一定在计数器中。支持带权重的累加，每次 O(log capacity)。
+// 非线程安全，由调用方加锁。
+public class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters = new HashMap<>();
+    private final TreeSet<Counter<K>> byCount = new TreeSet<>(
+            Comparator.<Counter<K>>comparingLong(Counter::getCount).thenComparingLong(counter -> counter.sequence));
+    private long total;
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(K key, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        total += weight;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter = new Counter<>(key, counter.count + weight, counter.error, counter.sequence);
+        } else if (counters.size() < capacity) {
+            counter = new Counter<>(key, weight, 0, sequence++);
+        } else {
+            Counter<K> min = byCount.pollFirst();
+            counters.remove(min.key);
+            counter = new Counter<>(key, min.count + weight, min.count, sequence++);
+        }
+        counters.put(key, counter);
+        byCount.add(counter);
+    }
+
+    // 计数最大的 k 个，按计数降序
+    public List<Counter<K>> top(int k) {
+        List<Counter<K>> result = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter<K>> iterator = byCount.descendingIterator();
+        while (iterator.hasNext() && result.size() < k) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public void clear() {
+        counters.clear();
+        byCount.clear();
+        total = 0;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Counter<K> {
+        private final K key;
+        private final long count;
+        private final long error;
+        private final long sequence;
+    }
+}
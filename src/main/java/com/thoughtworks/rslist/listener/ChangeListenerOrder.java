@@ -0,0 +1,14 @@
+package com.thoughtworks.rslist.listener;
+
+// 事务提交后各监听器的执行顺序：先更新内存索引，再让依赖索引的缓存和快照失效
+public final class ChangeListenerOrder {
+    public static final int INDEX = 0;
+    public static final int CACHE = 10;
+    public static final int SNAPSHOT = 20;
+    public static final int STREAM = 30;
+    // 数据版本必须最后推进
+    public static final int VERSION = 100;
+
+    private ChangeListenerOrder() {
+    }
+}
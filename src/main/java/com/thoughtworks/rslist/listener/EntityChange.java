@@ -0,0 +1,11 @@
+package com.thoughtworks.rslist.listener;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 投票记录、用户等没有专门内存结构的实体的变更通知，只用于推进数据版本
+@Getter
+@AllArgsConstructor
+public class EntityChange {
+    private final Class<?> entityType;
+}
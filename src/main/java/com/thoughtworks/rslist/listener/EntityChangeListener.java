@@ -0,0 +1,20 @@
+package com.thoughtworks.rslist.listener;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+public class EntityChangeListener {
+    @Autowired
+    ApplicationEventPublisher publisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void afterChange(Object entity) {
+        publisher.publishEvent(new EntityChange(entity.getClass()));
+    }
+}
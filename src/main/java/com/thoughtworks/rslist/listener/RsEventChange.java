@@ -0,0 +1,45 @@
+package com.thoughtworks.rslist.listener;
+
+import com.thoughtworks.rslist.dto.RsEventDto;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 热搜事件变更通知，事务提交后由各内存索引消费
+@Getter
+@AllArgsConstructor
+public class RsEventChange {
+    public enum Type {
+        SAVED, REMOVED, VOTED
+    }
+
+    private final Type type;
+    private final int id;
+    private final String eventName;
+    private final String keyword;
+    private final int voteNum;
+    private final int rsRank;
+    // 仅 SAVED 使用：这次保存是否写入了票数。没有写入时实体中的票数可能已经过期
+    private final boolean voteNumWritten;
+
+    public RsEventChange(Type type, int id, String eventName, String keyword, int voteNum, int rsRank) {
+        this(type, id, eventName, keyword, voteNum, rsRank, true);
+    }
+
+    public static RsEventChange saved(RsEventDto rsEventDto) {
+        return saved(rsEventDto, true);
+    }
+
+    public static RsEventChange saved(RsEventDto rsEventDto, boolean voteNumWritten) {
+        return new RsEventChange(Type.SAVED, rsEventDto.getId(), rsEventDto.getEventName(),
+                rsEventDto.getKeyword(), rsEventDto.getVoteNum(), rsEventDto.getRsRank(), voteNumWritten);
+    }
+
+    public static RsEventChange removed(int id) {
+        return new RsEventChange(Type.REMOVED, id, null, null, 0, 0);
+    }
+
+    // voteNum 为本次增加的票数
+    public static RsEventChange voted(int id, int voteNum) {
+        return new RsEventChange(Type.VOTED, id, null, null, voteNum, 0);
+    }
+}
@@ -0,0 +1,36 @@
+package com.thoughtworks.rslist.listener;
+
+import com.thoughtworks.rslist.dto.RsEventDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+// 由 Hibernate 通过 SpringBeanContainer 创建，把实体写入转成 RsEventChange
+public class RsEventEntityListener {
+    @Autowired
+    ApplicationEventPublisher publisher;
+
+    @PostLoad
+    public void afterLoad(RsEventDto rsEventDto) {
+        rsEventDto.setSavedVoteNum(rsEventDto.getVoteNum());
+    }
+
+    // @DynamicUpdate 只写改动过的列，票数没变时数据库里的票数不受这次保存影响
+    @PostPersist
+    @PostUpdate
+    public void afterSave(RsEventDto rsEventDto) {
+        boolean voteNumWritten = rsEventDto.getSavedVoteNum() == null
+                || rsEventDto.getSavedVoteNum() != rsEventDto.getVoteNum();
+        publisher.publishEvent(RsEventChange.saved(rsEventDto, voteNumWritten));
+        rsEventDto.setSavedVoteNum(rsEventDto.getVoteNum());
+    }
+
+    @PostRemove
+    public void afterRemove(RsEventDto rsEventDto) {
+        publisher.publishEvent(RsEventChange.removed(rsEventDto.getId()));
+    }
+}
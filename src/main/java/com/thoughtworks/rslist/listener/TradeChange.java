@@ -0,0 +1,23 @@
+package com.thoughtworks.rslist.listener;
+
+import com.thoughtworks.rslist.dto.TradeDto;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 热搜排名购买记录变更通知，事务提交后由价格簿消费
+@Getter
+@AllArgsConstructor
+public class TradeChange {
+    private final boolean removed;
+    private final int id;
+    private final int rank;
+    private final int amount;
+
+    public static TradeChange saved(TradeDto tradeDto) {
+        return new TradeChange(false, tradeDto.getId(), tradeDto.getRank(), tradeDto.getAmount());
+    }
+
+    public static TradeChange removed(TradeDto tradeDto) {
+        return new TradeChange(true, tradeDto.getId(), tradeDto.getRank(), tradeDto.getAmount());
+    }
+}
@@ -0,0 +1,25 @@
+package com.thoughtworks.rslist.listener;
+
+import com.thoughtworks.rslist.dto.TradeDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+public class TradeEntityListener {
+    @Autowired
+    ApplicationEventPublisher publisher;
+
+    @PostPersist
+    @PostUpdate
+    public void afterSave(TradeDto tradeDto) {
+        publisher.publishEvent(TradeChange.saved(tradeDto));
+    }
+
+    @PostRemove
+    public void afterRemove(TradeDto tradeDto) {
+        publisher.publishEvent(TradeChange.removed(tradeDto));
+    }
+}
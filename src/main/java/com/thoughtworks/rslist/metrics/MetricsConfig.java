@@ -0,0 +1,15 @@
+package com.thoughtworks.rslist.metrics;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// 让 @Timed 在任意 Spring Bean 上生效；接口请求由 Spring Boot 自动记录为 http.server.requests
+@Configuration
+public class MetricsConfig {
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
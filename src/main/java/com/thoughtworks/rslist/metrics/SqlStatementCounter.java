@@ -0,0 +1,73 @@
+package com.thoughtworks.rslist.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+// datasource-proxy 的监听器：把执行的 SQL 条数记到当前线程的作用域上，超过阈值的慢语句带上作用域名称打日志。
+// 作用域可以嵌套，内层结束时条数并入外层；批量执行算一条。
+@Slf4j
+public class SqlStatementCounter implements QueryExecutionListener {
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final long slowThresholdMillis;
+
+    public SqlStatementCounter(long slowThresholdMillis) {
+        this.slowThresholdMillis = slowThresholdMillis;
+    }
+
+    public static Scope open(String name) {
+        Scope scope = new Scope(name, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.count += queryInfoList.size();
+        }
+        if (execInfo.getElapsedTime() >= slowThresholdMillis) {
+            log.warn("slow sql in {} took {} ms: {}", scope == null ? "-" : scope.name, execInfo.getElapsedTime(),
+                    queryInfoList.stream().map(QueryInfo::getQuery).collect(Collectors.joining("; ")));
+        }
+    }
+
+    public static class Scope implements AutoCloseable {
+        private final String name;
+        private final Scope parent;
+        private int count;
+
+        private Scope(String name, Scope parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                parent.count += count;
+                CURRENT.set(parent);
+            }
+        }
+    }
+}
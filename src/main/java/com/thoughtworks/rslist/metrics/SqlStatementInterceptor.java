@@ -0,0 +1,55 @@
+package com.thoughtworks.rslist.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// 每个请求打开一个以控制器方法命名的 SQL 计数作用域，结束时记录到 rs.sql.statements
+@Slf4j
+public class SqlStatementInterceptor implements AsyncHandlerInterceptor {
+    private static final String SCOPE = SqlStatementInterceptor.class.getName() + ".scope";
+
+    private final MeterRegistry registry;
+
+    public SqlStatementInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod method = (HandlerMethod) handler;
+            request.setAttribute(SCOPE, SqlStatementCounter.open(
+                    method.getBeanType().getSimpleName() + "." + method.getMethod().getName()));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        close(request);
+    }
+
+    // 异步请求（如 /rs/stream）在这里离开请求线程，作用域不能留在线程上
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        close(request);
+    }
+
+    private void close(HttpServletRequest request) {
+        SqlStatementCounter.Scope scope = (SqlStatementCounter.Scope) request.getAttribute(SCOPE);
+        if (scope == null) {
+            return;
+        }
+        request.removeAttribute(SCOPE);
+        scope.close();
+        registry.summary("rs.sql.statements", "handler", scope.getName()).record(scope.getCount());
+        log.debug("{} executed {} sql statements", scope.getName(), scope.getCount());
+    }
+}
@@ -0,0 +1,90 @@
+package com.thoughtworks.rslist.ratelimit;
+
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
+import com.thoughtworks.rslist.exception.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 投票和购买接口的按用户限流，在调用 RsService 之前检查，超限时直接返回 429，不访问数据库。
+// 批量投票每一票占一个令牌，按 userId 分组一次取足；单个用户的票数超过桶容量时永远取不到，按请求无效返回 400。
+// 购买请求不带用户信息，按客户端地址限流：按热搜限流会让同一条热搜的所有买家共用一个桶，
+// 一个客户端就能把其他人挡在外面；部署在反向代理后面时需要开启 server.forward-headers-strategy 才能拿到真实地址。
+@Component
+public class RateLimiter {
+    private final boolean enabled;
+    private final long idleNanos;
+    private final int voteCapacity;
+    private final TokenBucketLimiter vote;
+    private final TokenBucketLimiter buy;
+
+    public RateLimiter(@Value("${rs.rate-limit.enabled:true}") boolean enabled,
+                       @Value("${rs.rate-limit.idle-timeout:60000}") long idleTimeoutMillis,
+                       @Value("${rs.rate-limit.vote.capacity:10}") int voteCapacity,
+                       @Value("${rs.rate-limit.vote.refill-per-second:5}") double voteRefillPerSecond,
+                       @Value("${rs.rate-limit.buy.capacity:3}") int buyCapacity,
+                       @Value("${rs.rate-limit.buy.refill-per-second:1}") double buyRefillPerSecond) {
+        this.enabled = enabled;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.voteCapacity = voteCapacity;
+        this.vote = new TokenBucketLimiter(voteCapacity, voteRefillPerSecond);
+        this.buy = new TokenBucketLimiter(buyCapacity, buyRefillPerSecond);
+    }
+
+    public void acquireVote(int userId) {
+        acquire(vote, "user:" + userId, "too many votes");
+    }
+
+    // 某个用户的令牌不够时整批拒绝，已经通过的用户取走的令牌退回
+    public void acquireVotes(List<Vote> votes) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        votes.forEach(item -> counts.merge("user:" + item.getUserId(), 1, Integer::sum));
+        if (counts.values().stream().anyMatch(count -> count > voteCapacity)) {
+            throw new RequestNotValidException("too many votes in one batch");
+        }
+        Map<String, Integer> acquired = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            long waitNanos = vote.tryAcquire(entry.getKey(), entry.getValue());
+            if (waitNanos > 0) {
+                acquired.forEach(vote::release);
+                throw tooManyRequests("too many votes", waitNanos);
+            }
+            acquired.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void acquireBuy(String clientAddress) {
+        acquire(buy, "client:" + clientAddress, "too many trades");
+    }
+
+    @Scheduled(fixedDelayString = "${rs.rate-limit.idle-timeout:60000}")
+    public void evictIdle() {
+        vote.evictIdle(idleNanos);
+        buy.evictIdle(idleNanos);
+    }
+
+    private void acquire(TokenBucketLimiter limiter, String key, String error) {
+        if (!enabled) {
+            return;
+        }
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos > 0) {
+            throw tooManyRequests(error, waitNanos);
+        }
+    }
+
+    // Retry-After 以秒为单位，向上取整
+    private TooManyRequestsException tooManyRequests(String error, long waitNanos) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        return new TooManyRequestsException(error, (waitNanos + second - 1) / second);
+    }
+}
@@ -0,0 +1,86 @@
+package com.thoughtworks.rslist.ratelimit;
+
+import lombok.AllArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+// 按 key 划分的令牌桶，每个桶最多 capacity 个令牌，每秒补充 refillPerSecond 个。
+// 桶的状态是不可变对象，取令牌时 CAS 替换，不加锁；不同 key 之间互不影响。
+public class TokenBucketLimiter {
+    private final double capacity;
+    private final double refillPerNano;
+    private final LongSupplier nanoTime;
+    private final Map<Object, AtomicReference<Bucket>> buckets = new ConcurrentHashMap<>();
+
+    public TokenBucketLimiter(int capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, System::nanoTime);
+    }
+
+    TokenBucketLimiter(int capacity, double refillPerSecond, LongSupplier nanoTime) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.nanoTime = nanoTime;
+    }
+
+    // 取到令牌时返回 0，否则返回距离下一个令牌的纳秒数
+    public long tryAcquire(Object key) {
+        return tryAcquire(key, 1);
+    }
+
+    // 一次取 permits 个令牌，不够时一个也不取，返回补足 permits 个令牌还需的纳秒数；
+    // permits 超过 capacity 时永远取不到，调用方需要先检查
+    public long tryAcquire(Object key, int permits) {
+        if (permits > capacity) {
+            throw new IllegalArgumentException("permits " + permits + " exceed capacity " + capacity);
+        }
+        AtomicReference<Bucket> reference =
+                buckets.computeIfAbsent(key, k -> new AtomicReference<>(new Bucket(capacity, nanoTime.getAsLong())));
+        while (true) {
+            long now = nanoTime.getAsLong();
+            Bucket current = reference.get();
+            double tokens = Math.min(capacity, current.tokens + (now - current.time) * refillPerNano);
+            if (tokens < permits) {
+                return (long) Math.ceil((permits - tokens) / refillPerNano);
+            }
+            if (reference.compareAndSet(current, new Bucket(tokens - permits, now))) {
+                return 0;
+            }
+        }
+    }
+
+    // 退回取走的令牌，不超过 capacity；桶已被清理时无需退回
+    public void release(Object key, int permits) {
+        AtomicReference<Bucket> reference = buckets.get(key);
+        if (reference == null) {
+            return;
+        }
+        while (true) {
+            Bucket current = reference.get();
+            if (reference.compareAndSet(current,
+                    new Bucket(Math.min(capacity, current.tokens + permits), current.time))) {
+                return;
+            }
+        }
+    }
+
+    // 清理空闲超过 idleNanos 的桶。空闲时间不短于 capacity / refillPerSecond 秒时桶早已补满，
+    // 清理后重新创建的满桶与原来等价；清理与取令牌并发时最多多放行一次
+    public void evictIdle(long idleNanos) {
+        long now = nanoTime.getAsLong();
+        buckets.values().removeIf(reference -> now - reference.get().time >= idleNanos);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    @AllArgsConstructor
+    private static class Bucket {
+        private final double tokens;
+        private final long time;
+    }
+}
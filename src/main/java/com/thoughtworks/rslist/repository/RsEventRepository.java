@@ -1,14 +1,47 @@
 package com.thoughtworks.rslist.repository;
 
+import com.thoughtworks.rslist.domain.RankedRsEvent;
+import com.thoughtworks.rslist.domain.RsEvent;
 import com.thoughtworks.rslist.dto.RsEventDto;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
-public interface RsEventRepository extends CrudRepository<RsEventDto, Integer> {
+// trade 是 mappedBy 的一对一，不 join 取出时每行都会多一次查询，所以加载实体的读路径都带上 EntityGraph；
+// 只需要展示字段的列表查询直接投影成 RsEvent，不进入持久化上下文；列表查询是只读事务，配置了从库时走从库
+public interface RsEventRepository extends JpaRepository<RsEventDto, Integer> {
+  // /rs/list 不返回购买排名，userId 沿用原来的约定存放热搜 id
+  String LISTED = "select new com.thoughtworks.rslist.domain.RsEvent(e.eventName, e.keyword, e.voteNum, e.id, 0) "
+      + "from RsEventDto e ";
+
+  @EntityGraph(attributePaths = {"user", "trade"})
   List<RsEventDto> findAll();
+  @EntityGraph(attributePaths = "trade")
+  Optional<RsEventDto> findById(Integer id);
+  @Transactional(readOnly = true)
+  @Query(LISTED + "order by e.id")
+  List<RsEvent> findAllListed();
+  @Transactional(readOnly = true)
+  @Query(LISTED + "order by e.id")
+  List<RsEvent> findListed(Pageable pageable);
+  @Transactional(readOnly = true)
+  @Query(LISTED + "where e.id > :id order by e.id")
+  List<RsEvent> findListedAfter(@Param("id") int id, Pageable pageable);
+  @Query("select new com.thoughtworks.rslist.domain.RankedRsEvent(e.id, e.eventName, e.keyword, e.voteNum, e.rsRank) "
+      + "from RsEventDto e")
+  List<RankedRsEvent> findAllRanked();
   RsEventDto findByEventName(String eventName);
   @Transactional
   void deleteAllByUserId(int userId);
+  @Transactional
+  @Modifying
+  @Query("update RsEventDto e set e.voteNum = e.voteNum + :delta where e.id = :id")
+  int addVoteNum(@Param("id") int id, @Param("delta") int delta);
 }
@@ -0,0 +1,16 @@
+package com.thoughtworks.rslist.repository;
+
+import com.thoughtworks.rslist.dto.TradeRecordDto;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface TradeRecordRepository extends CrudRepository<TradeRecordDto, Integer> {
+    List<TradeRecordDto> findAllByRsEventIdOrderByIdAsc(int rsEventId);
+    @Modifying
+    @Query("update TradeRecordDto t set t.superseded = true where t.rank = :rank and t.superseded = false")
+    int supersede(@Param("rank") int rank);
+}
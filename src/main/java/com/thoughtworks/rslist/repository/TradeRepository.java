@@ -1,11 +1,23 @@
 package com.thoughtworks.rslist.repository;
 
 import com.thoughtworks.rslist.dto.TradeDto;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
 import java.util.List;
 
-public interface TradeRepository extends CrudRepository<TradeDto,Integer> {
+public interface TradeRepository extends JpaRepository<TradeDto,Integer> {
+    // RankPriceBook 启动时据此加载价格，要读主库上的最新数据
+    @Override
+    @Transactional
     List<TradeDto> findAll();
     TradeDto findByRank(int rank);
+    // 购买时锁住该排名的持有记录，并发出价排队比较，低价不会覆盖已接受的高价
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from TradeDto t where t.rank = :rank")
+    TradeDto findByRankForUpdate(@Param("rank") int rank);
 }
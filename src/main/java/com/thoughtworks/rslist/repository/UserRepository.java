@@ -1,10 +1,25 @@
 package com.thoughtworks.rslist.repository;
 
 import com.thoughtworks.rslist.dto.UserDto;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
-public interface UserRepository extends CrudRepository<UserDto, Integer> {
+public interface UserRepository extends JpaRepository<UserDto, Integer> {
     List<UserDto> findAll();
+    // 发布热搜前校验用户，不走从库，刚注册的用户也能立即发布
+    @Override
+    @Transactional
+    Optional<UserDto> findById(Integer id);
+    @Modifying
+    @Query("update UserDto u set u.voteNum = u.voteNum - :num where u.id = :id and u.voteNum >= :num")
+    int subtractVoteNum(@Param("id") int id, @Param("num") int num);
+    @Modifying
+    @Query("update UserDto u set u.voteNum = u.voteNum + :num where u.id = :id")
+    int addVoteNum(@Param("id") int id, @Param("num") int num);
 }
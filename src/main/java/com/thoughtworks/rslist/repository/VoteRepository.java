@@ -1,12 +1,32 @@
 package com.thoughtworks.rslist.repository;
 
+import com.thoughtworks.rslist.domain.VoteRecord;
 import com.thoughtworks.rslist.dto.VoteDto;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface VoteRepository extends PagingAndSortingRepository<VoteDto, Integer> {
     List<VoteDto> findAll();
     List<VoteDto> findAllByUserIdAndRsEventId(int userId, int rsEventId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("select new com.thoughtworks.rslist.domain.VoteRecord(v.id, v.user.id, v.rsEvent.id, v.localDateTime, v.num) "
+            + "from VoteDto v where v.user.id = :userId and v.rsEvent.id = :rsEventId "
+            + "order by v.localDateTime, v.id")
+    List<VoteRecord> findRecords(@Param("userId") int userId, @Param("rsEventId") int rsEventId, Pageable pageable);
+
+    // 按 (localDateTime, id) 的键集翻页，深页和第一页一样走索引
+    @Transactional(readOnly = true)
+    @Query("select new com.thoughtworks.rslist.domain.VoteRecord(v.id, v.user.id, v.rsEvent.id, v.localDateTime, v.num) "
+            + "from VoteDto v where v.user.id = :userId and v.rsEvent.id = :rsEventId "
+            + "and (v.localDateTime > :time or (v.localDateTime = :time and v.id > :id)) "
+            + "order by v.localDateTime, v.id")
+    List<VoteRecord> findRecordsAfter(@Param("userId") int userId, @Param("rsEventId") int rsEventId,
+                                      @Param("time") LocalDateTime time, @Param("id") int id, Pageable pageable);
 }
@@ -0,0 +1,25 @@
+package com.thoughtworks.rslist.repository;
+
+import com.thoughtworks.rslist.dto.VoteShardDto;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface VoteShardRepository extends CrudRepository<VoteShardDto, Integer> {
+    @Query("select s from VoteShardDto s where s.voteNum <> 0")
+    List<VoteShardDto> findUnfolded();
+    // 分片行不存在时插入，存在时累加，一条语句完成，不需要事先为每条热搜建好分片行
+    @Modifying
+    @Query(value = "insert into vote_shard (rs_event_id, shard, vote_num) values (:rsEventId, :shard, :delta) "
+            + "on duplicate key update vote_num = vote_num + :delta", nativeQuery = true)
+    int addVoteNum(@Param("rsEventId") int rsEventId, @Param("shard") int shard, @Param("delta") int delta);
+    @Modifying
+    @Query("update VoteShardDto s set s.voteNum = s.voteNum - :delta where s.id = :id")
+    int subtractVoteNum(@Param("id") int id, @Param("delta") int delta);
+    @Modifying
+    @Query("delete from VoteShardDto s where s.rsEventId = :rsEventId")
+    int deleteByRsEventId(@Param("rsEventId") int rsEventId);
+}
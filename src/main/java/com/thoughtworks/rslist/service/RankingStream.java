@@ -0,0 +1,220 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.RankingDelta;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.index.RsEventIndex;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// /rs/stream 的推送：提交后记录变化的热搜 id，由定时任务单线程汇总成增量，合并进每个订阅者的待发送表，
+// 再交给固定大小的发送线程池。订阅者还在发送上一批时，新的增量按 id 覆盖旧值，
+// 待发送表最多和热搜数量一样大，慢的订阅者只会收到合并后的最新值。
+// 一次发送超过 send-timeout 仍未返回的订阅者被移除，并以错误结束连接，同时临时给线程池补一个线程，
+// 卡住的连接不会拖住其他订阅者。补的线程最多 spare-threads 个，超过后线程池不再变大，
+// 卡住的发送要等容器的写超时（server.connection-timeout）抛出异常才会把线程还回来。
+@Component
+public class RankingStream {
+    private final RsEventIndex rsEventIndex;
+    private final long timeout;
+    private final long sendTimeoutNanos;
+    private final ThreadPoolExecutor sender;
+    private final int maxSpareThreads;
+    private int spareThreads;
+    private final Set<Integer> changed = ConcurrentHashMap.newKeySet();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public RankingStream(RsEventIndex rsEventIndex,
+                         @Value("${rs.stream.timeout:1800000}") long timeout,
+                         @Value("${rs.stream.send-threads:4}") int sendThreads,
+                         @Value("${rs.stream.send-timeout:5000}") long sendTimeout,
+                         @Value("${rs.stream.spare-threads:4}") int spareThreads) {
+        this.rsEventIndex = rsEventIndex;
+        this.timeout = timeout;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeout);
+        this.maxSpareThreads = spareThreads;
+        AtomicInteger threads = new AtomicInteger();
+        this.sender = new ThreadPoolExecutor(sendThreads, sendThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "rs-stream-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(timeout));
+    }
+
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(ChangeListenerOrder.STREAM)
+    public void onChange(RsEventChange change) {
+        if (!subscribers.isEmpty()) {
+            changed.add(change.getId());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rs.stream.interval:100}")
+    public void dispatch() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.stalled(now)) {
+                subscribers.remove(subscriber);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<RankingDelta> deltas = new ArrayList<>();
+        for (Integer id : changed) {
+            changed.remove(id);
+            RsEvent rsEvent = rsEventIndex.rankOf(id);
+            deltas.add(rsEvent == null ? new RankingDelta(id, 0, 0)
+                    : new RankingDelta(id, rsEvent.getVoteNum(), rsEvent.getRsRank()));
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.offer(deltas)) {
+                try {
+                    sender.execute(subscriber::drain);
+                } catch (RejectedExecutionException e) {
+                    subscriber.close();
+                }
+            }
+        }
+    }
+
+    // 补线程时先调大上限再调核心线程数，收回时顺序相反，保证核心线程数不超过上限；
+    // 已经补满 spare-threads 个时返回 false
+    private synchronized boolean addSpareThread() {
+        if (spareThreads >= maxSpareThreads) {
+            return false;
+        }
+        spareThreads++;
+        sender.setMaximumPoolSize(sender.getMaximumPoolSize() + 1);
+        sender.setCorePoolSize(sender.getCorePoolSize() + 1);
+        return true;
+    }
+
+    private synchronized void removeSpareThread() {
+        spareThreads--;
+        sender.setCorePoolSize(sender.getCorePoolSize() - 1);
+        sender.setMaximumPoolSize(sender.getMaximumPoolSize() - 1);
+    }
+
+    // 当前补上的线程数
+    synchronized int getSpareThreads() {
+        return spareThreads;
+    }
+
+    @PreDestroy
+    public void close() {
+        subscribers.forEach(Subscriber::close);
+        sender.shutdownNow();
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        // id -> 最新增量，按首次变化的顺序发送
+        private Map<Integer, RankingDelta> pending = new LinkedHashMap<>();
+        private boolean sending;
+        // 当前这次发送开始的时间，0 表示没有在发送
+        private long sendingSince;
+        private boolean stalled;
+        // 超时时是否补了线程，发送返回后据此收回
+        private boolean spare;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        // 合并增量，返回是否需要安排一次发送
+        synchronized boolean offer(List<RankingDelta> deltas) {
+            deltas.forEach(delta -> pending.put(delta.getId(), delta));
+            if (sending) {
+                return false;
+            }
+            sending = true;
+            return true;
+        }
+
+        // 发送超时的订阅者只标记一次；阻塞的发送线程暂时回不到线程池，在补线程的上限内补一个
+        synchronized boolean stalled(long now) {
+            if (stalled || sendingSince == 0 || now - sendingSince < sendTimeoutNanos) {
+                return false;
+            }
+            stalled = true;
+            spare = addSpareThread();
+            return true;
+        }
+
+        void drain() {
+            while (true) {
+                List<RankingDelta> batch;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        sending = false;
+                        return;
+                    }
+                    batch = new ArrayList<>(pending.values());
+                    pending = new LinkedHashMap<>();
+                    sendingSince = System.nanoTime();
+                }
+                Exception failure = null;
+                try {
+                    emitter.send(SseEmitter.event().name("ranking").data(batch, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    failure = e;
+                }
+                synchronized (this) {
+                    sendingSince = 0;
+                    if (stalled) {
+                        // 超时期间补的线程在这里收回；SseEmitter 的方法互斥，只能在发送返回后结束连接
+                        if (spare) {
+                            removeSpareThread();
+                        }
+                        failure = new IOException("ranking stream send timed out");
+                    }
+                }
+                if (failure != null) {
+                    subscribers.remove(this);
+                    emitter.completeWithError(failure);
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            subscribers.remove(this);
+            emitter.complete();
+        }
+    }
+}
@@ -2,18 +2,27 @@ package com.thoughtworks.rslist.service;
 
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteResult;
 import com.thoughtworks.rslist.dto.RsEventDto;
 import com.thoughtworks.rslist.dto.TradeDto;
-import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.dto.TradeRecordDto;
 import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.index.RankPriceBook;
+import com.thoughtworks.rslist.listener.RsEventChange;
 import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeRecordRepository;
 import com.thoughtworks.rslist.repository.TradeRepository;
 import com.thoughtworks.rslist.repository.UserRepository;
 import com.thoughtworks.rslist.repository.VoteRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -23,68 +32,147 @@ public class RsService {
     final VoteRepository voteRepository;
 
     final TradeRepository tradeRepository;
+    final WriteBehindVoteCounter voteCounter;
+    final ShardedVoteCounter shardedVoteCounter;
+    final ApplicationEventPublisher publisher;
+    final RankPriceBook rankPriceBook;
+    final TradeRecordRepository tradeRecordRepository;
 
-    public RsService(RsEventRepository rsEventRepository, UserRepository userRepository, VoteRepository voteRepository, TradeRepository tradeRepository) {
+    public RsService(RsEventRepository rsEventRepository, UserRepository userRepository, VoteRepository voteRepository, TradeRepository tradeRepository, WriteBehindVoteCounter voteCounter, ShardedVoteCounter shardedVoteCounter, ApplicationEventPublisher publisher, RankPriceBook rankPriceBook, TradeRecordRepository tradeRecordRepository) {
         this.rsEventRepository = rsEventRepository;
         this.userRepository = userRepository;
         this.voteRepository = voteRepository;
         this.tradeRepository = tradeRepository;
+        this.voteCounter = voteCounter;
+        this.shardedVoteCounter = shardedVoteCounter;
+        this.publisher = publisher;
+        this.rankPriceBook = rankPriceBook;
+        this.tradeRecordRepository = tradeRecordRepository;
     }
 
+    @Timed("rs.service.vote")
+    @Transactional
     public void vote(Vote vote, int rsEventId) {
-        Optional<RsEventDto> rsEventDto = rsEventRepository.findById(rsEventId);
-        Optional<UserDto> userDto = userRepository.findById(vote.getUserId());
-        if (!rsEventDto.isPresent()
-                || !userDto.isPresent()
-                || vote.getVoteNum() > userDto.get().getVoteNum()) {
+        if (!applyVote(vote, rsEventId)) {
             throw new RuntimeException();
         }
-        VoteDto voteDto =
-                VoteDto.builder()
-                        .localDateTime(vote.getTime())
-                        .num(vote.getVoteNum())
-                        .rsEvent(rsEventDto.get())
-                        .user(userDto.get())
-                        .build();
-        voteRepository.save(voteDto);
-        UserDto user = userDto.get();
-        user.setVoteNum(user.getVoteNum() - vote.getVoteNum());
-        userRepository.save(user);
-        RsEventDto rsEvent = rsEventDto.get();
-        rsEvent.setVoteNum(rsEvent.getVoteNum() + vote.getVoteNum());
-        rsEventRepository.save(rsEvent);
+        voteRepository.save(toVoteDto(vote, rsEventId));
     }
 
+    // 批量投票：整体在一个事务里，单条失败不影响其他投票，投票记录最后批量插入
+    @Timed("rs.service.vote-all")
+    @Transactional
+    public List<VoteResult> voteAll(List<Vote> votes) {
+        List<VoteResult> results = new ArrayList<>(votes.size());
+        List<VoteDto> voteDtos = new ArrayList<>(votes.size());
+        for (Vote vote : votes) {
+            boolean success = applyVote(vote, vote.getRsEventId());
+            if (success) {
+                voteDtos.add(toVoteDto(vote, vote.getRsEventId()));
+            }
+            results.add(VoteResult.builder()
+                    .userId(vote.getUserId())
+                    .rsEventId(vote.getRsEventId())
+                    .voteNum(vote.getVoteNum())
+                    .success(success)
+                    .build());
+        }
+        voteRepository.saveAll(voteDtos);
+        return results;
+    }
+
+    // 用条件更新代替先查后改，先扣减用户的票数，成功后才更新热搜，余票不足的投票不会去锁热搜这一热点行；
+    // 延迟写和分片计数同时开启时延迟写优先
+    private boolean applyVote(Vote vote, int rsEventId) {
+        if (voteCounter.isEnabled() || shardedVoteCounter.isEnabled()) {
+            if (!rsEventRepository.existsById(rsEventId)
+                    || userRepository.subtractVoteNum(vote.getUserId(), vote.getVoteNum()) == 0) {
+                return false;
+            }
+            if (voteCounter.isEnabled()) {
+                voteCounter.add(rsEventId, vote.getVoteNum());
+            } else {
+                shardedVoteCounter.add(rsEventId, vote.getVoteNum());
+            }
+            return true;
+        }
+        // 余票不足或用户不存在时影响行数为 0
+        if (userRepository.subtractVoteNum(vote.getUserId(), vote.getVoteNum()) == 0) {
+            return false;
+        }
+        // 热搜不存在时退回已扣减的票数，批量投票的事务不会因单条失败而回滚
+        if (rsEventRepository.addVoteNum(rsEventId, vote.getVoteNum()) == 0) {
+            userRepository.addVoteNum(vote.getUserId(), vote.getVoteNum());
+            return false;
+        }
+        publisher.publishEvent(RsEventChange.voted(rsEventId, vote.getVoteNum()));
+        return true;
+    }
+
+    // 投票记录按 (localDateTime, id) 翻页，请求中没有带时间时取服务端当前时间
+    private VoteDto toVoteDto(Vote vote, int rsEventId) {
+        return VoteDto.builder()
+                .localDateTime(vote.getTime() == null ? LocalDateTime.now() : vote.getTime())
+                .num(vote.getVoteNum())
+                .rsEvent(rsEventRepository.getOne(rsEventId))
+                .user(userRepository.getOne(vote.getUserId()))
+                .build();
+    }
+
+    @Timed("rs.service.buy")
     @Transactional
     public void buy(Trade trade, int rsEventId) {
+        // 出价不高于价格簿中的当前价，不必访问数据库
+        if (!rankPriceBook.mayWin(trade.getRank(), trade.getAmount())) {
+            throw new RuntimeException();
+        }
         Optional<RsEventDto> rsEventDto = rsEventRepository.findById(rsEventId);
         if (!rsEventDto.isPresent()) {
             throw new RuntimeException();
         }
-        Optional<TradeDto> rankIsBuyed = Optional.ofNullable(tradeRepository.findByRank(trade.getRank()));
-
-        boolean IsSuccessOfBuyRank = false;
-        // 判断是否存在rank已被购买，并判断是否删除替换
-        if (!rankIsBuyed.isPresent()) {
-            IsSuccessOfBuyRank = true;
-        } else {
-            // 新购买的记录的Amount 大于 原处于rank记录
-            if (trade.getAmount() > rankIsBuyed.get().getAmount()) {
-                tradeRepository.delete(rankIsBuyed.get());
-                IsSuccessOfBuyRank = true;
-            }
-        }
-        if(!IsSuccessOfBuyRank){
+        Optional<TradeDto> rankIsBuyed = Optional.ofNullable(tradeRepository.findByRankForUpdate(trade.getRank()));
+        // 已被购买的排名需要出价高于原记录；排名还没有持有者时，并发的首次购买由 rank 唯一索引只放行一个
+        if (rankIsBuyed.isPresent() && trade.getAmount() <= rankIsBuyed.get().getAmount()) {
             throw new RuntimeException();
         }
+        RsEventDto rsEvent = rsEventDto.get();
 
-        TradeDto tradeDto = TradeDto.builder()
+        // 一个热搜同时只占一个排名，改买其他排名时让出原来的排名
+        TradeDto previous = rsEvent.getTrade();
+        if (previous != null && previous.getRank() != trade.getRank()) {
+            rsEvent.setTrade(null);
+            tradeRepository.delete(previous);
+            tradeRepository.flush();
+            tradeRecordRepository.supersede(previous.getRank());
+        }
+
+        // 原持有者不再删除，只是退回按票数排名；持有记录原地更新
+        TradeDto tradeDto;
+        if (rankIsBuyed.isPresent()) {
+            tradeDto = rankIsBuyed.get();
+            RsEventDto replaced = tradeDto.getRsEvent();
+            if (replaced.getId() != rsEvent.getId()) {
+                replaced.setRsRank(0);
+                replaced.setTrade(null);
+                rsEventRepository.save(replaced);
+            }
+            tradeDto.setAmount(trade.getAmount());
+            tradeDto.setRsEvent(rsEvent);
+        } else {
+            tradeDto = TradeDto.builder()
+                    .amount(trade.getAmount())
+                    .rank(trade.getRank())
+                    .rsEvent(rsEvent)
+                    .build();
+        }
+        tradeRepository.save(tradeDto);
+        tradeRecordRepository.supersede(trade.getRank());
+        tradeRecordRepository.save(TradeRecordDto.builder()
                 .amount(trade.getAmount())
                 .rank(trade.getRank())
-                .rsEvent(rsEventDto.get())
-                .build();
-        tradeRepository.save(tradeDto);
-        RsEventDto rsEvent = rsEventDto.get();
+                .rsEventId(rsEventId)
+                .localDateTime(LocalDateTime.now())
+                .build());
         rsEvent.setRsRank(tradeDto.getRank());
         rsEvent.setTrade(tradeDto);
         rsEventRepository.save(rsEvent);
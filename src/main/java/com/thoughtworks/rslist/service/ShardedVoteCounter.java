@@ -0,0 +1,136 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.dto.VoteShardDto;
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.VoteShardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// 热搜票数的分片计数：开启后投票不再更新 rsEvent 行，而是随机累加到该热搜的 count 个分片行之一，
+// 热门热搜上的并发投票分散到不同的行锁上。分片中的票数定时合并回 rsEvent.voteNum。
+// 内存中记录各热搜尚未合并的票数，索引和列表查询在数据库票数上加上这部分。
+// 未合并票数只在本实例内累计，只支持单实例部署：多个实例时各自看不到其它实例投到分片里的票，
+// 且一个实例合并了其它实例的分片后，那个实例的计数器不会减少，票数会被重复计入。
+@Component
+public class ShardedVoteCounter {
+    private final VoteShardRepository voteShardRepository;
+    private final RsEventRepository rsEventRepository;
+    private final ApplicationEventPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final VoteFoldLock foldLock;
+    private final boolean enabled;
+    private final int shardCount;
+    private final Map<Integer, LongAdder> unfolded = new ConcurrentHashMap<>();
+
+    public ShardedVoteCounter(VoteShardRepository voteShardRepository, RsEventRepository rsEventRepository,
+                              ApplicationEventPublisher publisher, PlatformTransactionManager transactionManager,
+                              VoteFoldLock foldLock, @Value("${rs.vote.shards.enabled:false}") boolean enabled,
+                              @Value("${rs.vote.shards.count:8}") int shardCount) {
+        this.voteShardRepository = voteShardRepository;
+        this.rsEventRepository = rsEventRepository;
+        this.publisher = publisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.foldLock = foldLock;
+        this.enabled = enabled;
+        this.shardCount = shardCount;
+    }
+
+    // 关闭分片后仍然加载上次运行留下的未合并票数，直到合并任务把它们写回
+    @PostConstruct
+    public void load() {
+        unfolded.clear();
+        voteShardRepository.findUnfolded().forEach(shard -> increment(shard.getRsEventId(), shard.getVoteNum()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 在调用方的事务中累加一个随机分片，事务提交后才计入内存中的未合并票数
+    public void add(int rsEventId, int voteNum) {
+        voteShardRepository.addVoteNum(rsEventId, ThreadLocalRandom.current().nextInt(shardCount), voteNum);
+        afterCommit(() -> increment(rsEventId, voteNum));
+        publisher.publishEvent(RsEventChange.voted(rsEventId, voteNum));
+    }
+
+    // 尚未合并回 rsEvent 的票数
+    public int pending(int rsEventId) {
+        LongAdder adder = unfolded.get(rsEventId);
+        return adder == null ? 0 : adder.intValue();
+    }
+
+    // 按分片行读出票数再减去同样的值，合并期间新投的票留在分片中等下一次合并；
+    // 分片和 rsEvent 在同一个事务里改，数据库中的总票数始终不变。
+    // 和 WriteBehindVoteCounter.flush() 一样，提交和从未合并票数中减去在 foldLock 的写锁内完成
+    @Scheduled(fixedDelayString = "${rs.vote.shards.compact-interval:5000}")
+    public void compact() {
+        if (unfolded.values().stream().allMatch(adder -> adder.sum() == 0)) {
+            return;
+        }
+        foldLock.fold(this::fold);
+    }
+
+    private void fold() {
+        Map<Integer, Integer> folded = transactionTemplate.execute(status -> {
+            Map<Integer, Integer> deltas = new HashMap<>();
+            for (VoteShardDto shard : voteShardRepository.findUnfolded()) {
+                voteShardRepository.subtractVoteNum(shard.getId(), shard.getVoteNum());
+                deltas.merge(shard.getRsEventId(), shard.getVoteNum(), Integer::sum);
+            }
+            deltas.forEach((rsEventId, delta) -> {
+                // 热搜已被删除
+                if (rsEventRepository.addVoteNum(rsEventId, delta) == 0) {
+                    voteShardRepository.deleteByRsEventId(rsEventId);
+                }
+            });
+            return deltas;
+        });
+        folded.forEach((rsEventId, delta) -> increment(rsEventId, -delta));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(RsEventChange change) {
+        if (change.getType() == RsEventChange.Type.REMOVED) {
+            unfolded.remove(change.getId());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        // 先登记增量再发布变更，保证缓存失效时增量已经可见
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public int getOrder() {
+                return ChangeListenerOrder.INDEX - 1;
+            }
+
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void increment(int rsEventId, int voteNum) {
+        unfolded.computeIfAbsent(rsEventId, id -> new LongAdder()).add(voteNum);
+    }
+}
@@ -0,0 +1,32 @@
+package com.thoughtworks.rslist.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// 数据库票数加上内存中未写回票数的一致读。写回把增量提交到数据库、再从内存计数器中减去，
+// 这两步在写锁内完成；读数据库票数和读未写回票数在读锁内完成，读者看不到已经提交但还没减去的中间状态
+@Component
+public class VoteFoldLock {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void fold(Runnable writer) {
+        lock.writeLock().lock();
+        try {
+            writer.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
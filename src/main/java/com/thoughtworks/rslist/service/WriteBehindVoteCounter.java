@@ -0,0 +1,115 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.listener.ChangeListenerOrder;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// 热搜票数的延迟写：开启后投票只累加内存中的分段计数器，定时批量写回 rsEvent 表，
+// 应用正常关闭时会把剩余增量全部写回。
+@Component
+public class WriteBehindVoteCounter {
+    private final RsEventRepository rsEventRepository;
+    private final ApplicationEventPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final VoteFoldLock foldLock;
+    private final boolean enabled;
+    private final Map<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+
+    public WriteBehindVoteCounter(RsEventRepository rsEventRepository, ApplicationEventPublisher publisher,
+                                  PlatformTransactionManager transactionManager, VoteFoldLock foldLock,
+                                  @Value("${rs.vote.write-behind.enabled:false}") boolean enabled) {
+        this.rsEventRepository = rsEventRepository;
+        this.publisher = publisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.foldLock = foldLock;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 在当前事务提交后才计入增量，事务回滚则丢弃
+    public void add(int rsEventId, int voteNum) {
+        // 先登记增量再发布变更，保证缓存失效时增量已经可见
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public int getOrder() {
+                    return ChangeListenerOrder.INDEX - 1;
+                }
+
+                @Override
+                public void afterCommit() {
+                    increment(rsEventId, voteNum);
+                }
+            });
+        } else {
+            increment(rsEventId, voteNum);
+        }
+        publisher.publishEvent(RsEventChange.voted(rsEventId, voteNum));
+    }
+
+    // 尚未写回数据库的票数
+    public int pending(int rsEventId) {
+        LongAdder adder = pending.get(rsEventId);
+        return adder == null ? 0 : adder.intValue();
+    }
+
+    // 写回时只读取当前值，不清零；事务提交后再从计数器中减去已写回的部分。
+    // 期间新增的票数留在计数器中，pending() 在提交前不会变小，写回失败时计数器保持原样。
+    // 提交和减去在 foldLock 的写锁内完成，否则读者可能读到已写回的票数再加上还没减去的同一部分
+    @Scheduled(fixedDelayString = "${rs.vote.write-behind.flush-interval:1000}")
+    @PreDestroy
+    public synchronized void flush() {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        pending.forEach((rsEventId, adder) -> {
+            int delta = adder.intValue();
+            if (delta != 0) {
+                deltas.put(rsEventId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        foldLock.fold(() -> {
+            transactionTemplate.execute(status -> {
+                deltas.forEach(rsEventRepository::addVoteNum);
+                return null;
+            });
+            deltas.forEach((rsEventId, delta) -> {
+                // 热搜在写回期间被删除时计数器已经移除，不再重建
+                LongAdder adder = pending.get(rsEventId);
+                if (adder != null) {
+                    adder.add(-delta);
+                }
+            });
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(RsEventChange change) {
+        if (change.getType() == RsEventChange.Type.REMOVED) {
+            pending.remove(change.getId());
+        }
+    }
+
+    private void increment(int rsEventId, int voteNum) {
+        pending.computeIfAbsent(rsEventId, id -> new LongAdder()).add(voteNum);
+    }
+}
@@ -5,38 +5,63 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.dto.RsEventDto;
 import com.thoughtworks.rslist.dto.TradeDto;
+import com.thoughtworks.rslist.dto.TradeRecordDto;
 import com.thoughtworks.rslist.dto.UserDto;
 import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.index.KeywordHeavyHitters;
 import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeRecordRepository;
 import com.thoughtworks.rslist.repository.TradeRepository;
 import com.thoughtworks.rslist.repository.UserRepository;
 import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.service.RankingStream;
+import com.thoughtworks.rslist.service.RsService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+// 限流的令牌几乎不补充，测试耗时不影响限流断言
+@SpringBootTest(properties = {
+        "rs.rate-limit.vote.refill-per-second=0.001",
+        "rs.rate-limit.buy.refill-per-second=0.001"})
 @AutoConfigureMockMvc
 class RsControllerTest {
+    @Value("${rs.rate-limit.vote.capacity}")
+    int voteCapacity;
+    @Value("${rs.rate-limit.buy.capacity}")
+    int buyCapacity;
     @Autowired
     private MockMvc mockMvc;
     @Autowired
@@ -47,13 +72,27 @@ class RsControllerTest {
     VoteRepository voteRepository;
     @Autowired
     TradeRepository tradeRepository;
+    @Autowired
+    TradeRecordRepository tradeRecordRepository;
+    @Autowired
+    RankingStream rankingStream;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    RsService rsService;
+    @Autowired
+    KeywordHeavyHitters keywordHeavyHitters;
     private UserDto userDto;
+    // 购买按客户端地址限流，每个测试用自己的地址，互不占用令牌
+    private static final AtomicInteger CLIENTS = new AtomicInteger();
+    private RequestPostProcessor client;
 
     @BeforeEach
     void setUp() {
         voteRepository.deleteAll();
         rsEventRepository.deleteAll();
         userRepository.deleteAll();
+        client = clientAddress("10.0.0." + CLIENTS.incrementAndGet());
         userDto =
                 UserDto.builder()
                         .voteNum(10)
@@ -144,6 +183,45 @@ class RsControllerTest {
                 .andExpect(jsonPath("$[2].keyword", is("无分类")));
     }
 
+    @Test
+    public void shouldGetRsListByCursor() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        rsEventRepository.save(RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build());
+        rsEventRepository.save(RsEventDto.builder().keyword("无分类").eventName("第二条事件").user(save).build());
+        rsEventRepository.save(RsEventDto.builder().keyword("无分类").eventName("第三条事件").user(save).build());
+
+        String cursor = mockMvc
+                .perform(get("/rs/list?start=1&end=2"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(PageCursor.HEADER))
+                .andReturn().getResponse().getHeader(PageCursor.HEADER);
+        mockMvc
+                .perform(get("/rs/list").param("cursor", cursor).param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].eventName", is("第三条事件")))
+                .andExpect(header().doesNotExist(PageCursor.HEADER));
+    }
+
+    @Test
+    public void shouldGetErrorWhenRsListRangeInvalid() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        rsEventRepository.save(RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build());
+
+        mockMvc
+                .perform(get("/rs/list?start=1&end=2"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("invalid index")));
+        mockMvc
+                .perform(get("/rs/list?start=0&end=1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("invalid index")));
+        mockMvc
+                .perform(get("/rs/list?cursor=not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("invalid cursor")));
+    }
+
     @Test
     public void shouldAddRsEventWhenUserExist() throws Exception {
 
@@ -199,6 +277,79 @@ class RsControllerTest {
         assertEquals(voteDtos.get(0).getNum(), 1);
     }
 
+    @Test
+    public void shouldVoteFailWhenUserVoteNumNotEnough() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        RsEventDto rsEventDto =
+                RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build();
+        rsEventDto = rsEventRepository.save(rsEventDto);
+
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":11}",
+                        save.getId(), LocalDateTime.now().toString());
+        mockMvc
+                .perform(
+                        post("/rs/vote/{id}", rsEventDto.getId())
+                                .content(jsonValue)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(userRepository.findById(save.getId()).get().getVoteNum(), 10);
+        assertEquals(rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum(), 0);
+        assertEquals(voteRepository.findAll().size(), 0);
+    }
+
+    @Test
+    public void shouldRollbackUserVoteNumWhenRsEventNotExist() throws Exception {
+        UserDto save = userRepository.save(userDto);
+
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":1}",
+                        save.getId(), LocalDateTime.now().toString());
+        mockMvc
+                .perform(
+                        post("/rs/vote/{id}", 100)
+                                .content(jsonValue)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(userRepository.findById(save.getId()).get().getVoteNum(), 10);
+        assertEquals(voteRepository.findAll().size(), 0);
+    }
+
+    @Test
+    public void shouldVoteAllAndReportEachResult() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        RsEventDto rsEventDto =
+                RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build();
+        rsEventDto = rsEventRepository.save(rsEventDto);
+
+        String time = LocalDateTime.now().toString();
+        String jsonValue =
+                String.format(
+                        "[{\"userId\":%d,\"rsEventId\":%d,\"time\":\"%s\",\"voteNum\":3},"
+                                + "{\"userId\":%d,\"rsEventId\":%d,\"time\":\"%s\",\"voteNum\":1},"
+                                + "{\"userId\":%d,\"rsEventId\":%d,\"time\":\"%s\",\"voteNum\":8}]",
+                        save.getId(), rsEventDto.getId(), time,
+                        save.getId(), 100, time,
+                        save.getId(), rsEventDto.getId(), time);
+        mockMvc
+                .perform(post("/rs/votes").content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].success", is(true)))
+                .andExpect(jsonPath("$[1].success", is(false)))
+                .andExpect(jsonPath("$[2].success", is(false)));
+
+        assertEquals(userRepository.findById(save.getId()).get().getVoteNum(), 7);
+        assertEquals(rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum(), 3);
+        List<VoteDto> voteDtos = voteRepository.findAll();
+        assertEquals(voteDtos.size(), 1);
+        assertEquals(voteDtos.get(0).getNum(), 3);
+    }
+
     @Test
     public void shouldBuyRankSuccessWhenTheRankHaveNotBuy() throws Exception {
         UserDto save = userRepository.save(userDto);
@@ -217,13 +368,34 @@ class RsControllerTest {
 
         ObjectMapper objectMapper = new ObjectMapper();
         String jsonTrade = objectMapper.writeValueAsString(trade);
-        mockMvc.perform(post("/rs/buy/{id}", rsEventDto.getId())
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto.getId()).with(client)
                 .content(jsonTrade).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
         RsEventDto rsEventBuyRank = tradeRepository.findByRank(1).getRsEvent();
         assertEquals(rsEventDto.getEventName(), rsEventBuyRank.getEventName());
     }
 
+    @Test
+    public void shouldGetRankPricesAfterBuy() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        RsEventDto rsEventDto = rsEventRepository.save(RsEventDto.builder()
+                .eventName("event name")
+                .keyword("keyword")
+                .user(save)
+                .build());
+        String jsonTrade = new ObjectMapper().writeValueAsString(Trade.builder().amount(100).rank(3).build());
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto.getId()).with(client)
+                .content(jsonTrade).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/rs/ranks/prices"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.3", is(100)));
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto.getId()).with(client)
+                .content(jsonTrade).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void shouldBuyRsEventFailWhenAmountLessThanRankIsBuyed() throws Exception {
         UserDto save = userRepository.save(userDto);
@@ -253,13 +425,60 @@ class RsControllerTest {
                 .build();
         ObjectMapper objectMapper = new ObjectMapper();
         String jsonTrade = objectMapper.writeValueAsString(trade);
-        mockMvc.perform(post("/rs/buy/{id}", rsEventDtoFotTestBuy.getId())
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDtoFotTestBuy.getId()).with(client)
                 .content(jsonTrade).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
         RsEventDto rsEventRank10 = tradeRepository.findByRank(10).getRsEvent();
         assertEquals("event name",String.valueOf(rsEventRank10.getEventName()));
     }
 
+    @Test
+    public void shouldRejectLowerConcurrentBidOnSameRank() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        RsEventDto holder = rsEventRepository.save(RsEventDto.builder().eventName("holder").keyword("keyword")
+                .user(save).build());
+        RsEventDto high = rsEventRepository.save(RsEventDto.builder().eventName("high").keyword("keyword")
+                .user(save).build());
+        RsEventDto low = rsEventRepository.save(RsEventDto.builder().eventName("low").keyword("keyword")
+                .user(save).build());
+        ObjectMapper objectMapper = new ObjectMapper();
+        mockMvc.perform(post("/rs/buy/{id}", holder.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(100).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        // 200 的出价已经更新了持有记录但还没提交时，150 的出价到达
+        CountDownLatch highBought = new CountDownLatch(1);
+        CompletableFuture<Void> highBid = CompletableFuture.runAsync(() ->
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    rsService.buy(Trade.builder().amount(200).rank(1).build(), high.getId());
+                    highBought.countDown();
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        highBought.await();
+        mockMvc.perform(post("/rs/buy/{id}", low.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(150).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        highBid.join();
+
+        TradeDto trade = tradeRepository.findByRank(1);
+        assertEquals(200, trade.getAmount());
+        assertEquals("high", trade.getRsEvent().getEventName());
+        List<TradeRecordDto> current = new ArrayList<>();
+        tradeRecordRepository.findAll().forEach(record -> {
+            if (record.getRank() == 1 && !record.isSuperseded()) {
+                current.add(record);
+            }
+        });
+        assertEquals(1, current.size());
+        assertEquals(200, current.get(0).getAmount());
+    }
+
     @Test
     public void shouldBuyRsEventSuccessWhenAmountMoreThanRankIsBuyed() throws Exception {
         UserDto save = userRepository.save(userDto);
@@ -290,15 +509,79 @@ class RsControllerTest {
         assertEquals(2,rsEventRepository.count());
         ObjectMapper objectMapper = new ObjectMapper();
         String jsonTrade = objectMapper.writeValueAsString(trade);
-        mockMvc.perform(post("/rs/buy/{id}", rsEventDtoFotTestBuy.getId())
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDtoFotTestBuy.getId()).with(client)
                 .content(jsonTrade).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
         RsEventDto rsEventRank10 = tradeRepository.findByRank(10).getRsEvent();
-        assertEquals(1,rsEventRepository.count());
+        assertEquals(2,rsEventRepository.count());
         assertEquals("new event name",String.valueOf(rsEventRank10.getEventName()));
+        assertEquals(0,rsEventRepository.findById(rsEventDto.getId()).get().getRsRank());
+        assertEquals(1,tradeRepository.count());
     }
 
 
+    @Test
+    public void shouldKeepTradeRecordsWhenOutbid() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        RsEventDto first = rsEventRepository.save(RsEventDto.builder()
+                .eventName("event name")
+                .keyword("keyword")
+                .user(save)
+                .build());
+        RsEventDto second = rsEventRepository.save(RsEventDto.builder()
+                .eventName("new event name")
+                .keyword("keyword")
+                .user(save)
+                .build());
+        ObjectMapper objectMapper = new ObjectMapper();
+        mockMvc.perform(post("/rs/buy/{id}", first.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(10).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rs/buy/{id}", second.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(20).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        List<TradeRecordDto> firstRecords = tradeRecordRepository.findAllByRsEventIdOrderByIdAsc(first.getId());
+        List<TradeRecordDto> secondRecords = tradeRecordRepository.findAllByRsEventIdOrderByIdAsc(second.getId());
+        assertEquals(1, firstRecords.size());
+        assertTrue(firstRecords.get(0).isSuperseded());
+        assertEquals(1, secondRecords.size());
+        assertFalse(secondRecords.get(0).isSuperseded());
+        assertEquals(20, tradeRepository.findByRank(1).getAmount());
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].eventName", is("new event name")))
+                .andExpect(jsonPath("$[1].eventName", is("event name")));
+    }
+
+    @Test
+    public void shouldReleasePreviousRankWhenBuyAnotherRank() throws Exception {
+        UserDto save = userRepository.save(userDto);
+        RsEventDto rsEventDto = rsEventRepository.save(RsEventDto.builder()
+                .eventName("event name")
+                .keyword("keyword")
+                .user(save)
+                .build());
+        ObjectMapper objectMapper = new ObjectMapper();
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(10).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(10).rank(2).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        assertEquals(null, tradeRepository.findByRank(1));
+        assertEquals(rsEventDto.getId(), tradeRepository.findByRank(2).getRsEvent().getId());
+        assertEquals(2, rsEventRepository.findById(rsEventDto.getId()).get().getRsRank());
+        mockMvc.perform(get("/rs/ranks/prices"))
+                .andExpect(jsonPath("$.1").doesNotExist())
+                .andExpect(jsonPath("$.2", is(10)));
+    }
+
     // 数据初始化，为了不影响其他已存在测试，在此测试中，单独调用。
     UserDto userDto_1;
     RsEventDto rsEventDto_1;
@@ -403,4 +686,385 @@ class RsControllerTest {
                 .andExpect(jsonPath("$[5].voteNum",is(2)))
                 .andExpect(jsonPath("$[5].rsRank",is(6)));
     }
+
+    @Test
+    public void shouldGetTopKRsEventWithBuyedRank() throws Exception {
+        setData();
+        TradeDto tradeDto = TradeDto.builder()
+                .amount(10)
+                .rank(1)
+                .rsEvent(rsEventDto_1)
+                .build();
+        tradeRepository.save(tradeDto);
+        rsEventDto_1.setRsRank(tradeDto.getRank());
+        rsEventDto_1.setTrade(tradeDto);
+        rsEventRepository.save(rsEventDto_1);
+
+        mockMvc.perform(get("/rs/top").param("k", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$",hasSize(3)))
+                .andExpect(jsonPath("$[0].eventName",is("1.猪肉又涨价了啊！")))
+                .andExpect(jsonPath("$[0].rsRank",is(1)))
+                .andExpect(jsonPath("$[1].eventName",is("6.6号事件")))
+                .andExpect(jsonPath("$[2].eventName",is("5.5号事件")))
+                .andExpect(jsonPath("$[2].rsRank",is(3)));
+        mockMvc.perform(get("/rs/top").param("k", "100"))
+                .andExpect(jsonPath("$",hasSize(6)));
+        mockMvc.perform(get("/rs/top").param("k", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error",is("invalid k")));
+    }
+
+    @Test
+    public void shouldResortRsEventAfterVote() throws Exception {
+        setData();
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":6}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$",hasSize(6)))
+                .andExpect(jsonPath("$[0].eventName",is("1.猪肉又涨价了啊！")))
+                .andExpect(jsonPath("$[0].voteNum",is(7)))
+                .andExpect(jsonPath("$[0].rsRank",is(1)))
+                .andExpect(jsonPath("$[1].eventName",is("6.6号事件")))
+                .andExpect(jsonPath("$[1].rsRank",is(2)));
+    }
+
+    @Test
+    public void shouldInvalidateCachedRankingAfterVote() throws Exception {
+        setData();
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(jsonPath("$[0].eventName",is("6.6号事件")));
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(jsonPath("$[0].eventName",is("6.6号事件")));
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":6}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].eventName",is("1.猪肉又涨价了啊！")))
+                .andExpect(jsonPath("$[0].voteNum",is(7)));
+        mockMvc.perform(get("/rs/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits").isNumber())
+                .andExpect(jsonPath("$.loads").isNumber());
+    }
+
+    @Test
+    public void shouldKeepCommittedVotesWhenStaleEventIsSaved() throws Exception {
+        setData();
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":6}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        // 和购买一样在事务里加载并修改热搜，加载之后另一个请求的投票先提交
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            RsEventDto stale = rsEventRepository.findById(rsEventDto_1.getId()).get();
+            CompletableFuture.runAsync(() -> {
+                try {
+                    mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                            .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                            .andExpect(status().isOk());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).join();
+            stale.setKeyword("renamed");
+            rsEventRepository.save(stale);
+        });
+
+        assertEquals(7, rsEventRepository.findById(rsEventDto_1.getId()).get().getVoteNum());
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].eventName",is("1.猪肉又涨价了啊！")))
+                .andExpect(jsonPath("$[0].keyword",is("renamed")))
+                .andExpect(jsonPath("$[0].voteNum",is(7)));
+    }
+
+    @Test
+    public void shouldRankByVoteNumWrittenBySave() throws Exception {
+        setData();
+        RsEventDto rsEventDto = rsEventRepository.findById(rsEventDto_1.getId()).get();
+        rsEventDto.setVoteNum(100);
+        rsEventRepository.save(rsEventDto);
+
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].eventName",is("1.猪肉又涨价了啊！")))
+                .andExpect(jsonPath("$[0].voteNum",is(100)));
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedUntilRankingChanges() throws Exception {
+        setData();
+        String etag = mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+        mockMvc.perform(get("/rs/sortedevents").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/rs/list").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/rs/1").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":6}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rs/sortedevents").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)))
+                .andExpect(jsonPath("$[0].voteNum",is(7)));
+    }
+
+    @Test
+    public void shouldStreamRankingDeltaAfterVote() throws Exception {
+        setData();
+        MvcResult stream = mockMvc.perform(get("/rs/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":6}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        rankingStream.dispatch();
+
+        String expected = String.format("{\"id\":%d,\"voteNum\":7,\"position\":1}", rsEventDto_1.getId());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!stream.getResponse().getContentAsString().contains(expected)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String content = stream.getResponse().getContentAsString();
+        assertTrue(content.contains("event:ranking"));
+        assertTrue(content.contains(expected));
+    }
+
+    @Test
+    public void shouldStayWithinStatementBudget() throws Exception {
+        setData();
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":1}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        // 第一次使用 vote_seq 时 Hibernate 会多取一次序列，先投一票让号段就绪
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        StatementBudget.perform(mockMvc, post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON), 4)
+                .andExpect(status().isOk());
+        StatementBudget.perform(mockMvc, get("/rs/list").param("start", "1").param("end", "6"), 1)
+                .andExpect(jsonPath("$", hasSize(6)));
+        StatementBudget.perform(mockMvc, get("/rs/list"), 1)
+                .andExpect(jsonPath("$", hasSize(6)));
+        StatementBudget.perform(mockMvc, get("/rs/1"), 0)
+                .andExpect(status().isOk());
+        StatementBudget.perform(mockMvc, get("/rs/sortedevents"), 0)
+                .andExpect(jsonPath("$", hasSize(6)));
+        StatementBudget.perform(mockMvc, get("/rs/top").param("k", "3"), 0)
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+
+    @Test
+    public void shouldRejectVoteOverRateLimitWithoutTouchingDatabase() throws Exception {
+        setData();
+        String jsonValue =
+                String.format(
+                        "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":0}",
+                        userDto_1.getId(), LocalDateTime.now().toString());
+        for (int i = 0; i < voteCapacity; i++) {
+            mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                    .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+        }
+        StatementBudget.perform(mockMvc, post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON), 0)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"))
+                .andExpect(jsonPath("$.error", is("too many votes")));
+        // 其他用户不受影响
+        UserDto other = userRepository.save(userDto);
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":0}",
+                        other.getId(), LocalDateTime.now().toString()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRejectVoteBatchOverRateLimitBeforeVoting() throws Exception {
+        setData();
+        UserDto other = userRepository.save(userDto);
+        String vote = "{\"userId\":%d,\"rsEventId\":%d,\"time\":\"%s\",\"voteNum\":1}";
+        String time = LocalDateTime.now().toString();
+        List<String> votes = new ArrayList<>();
+        for (int i = 0; i < voteCapacity; i++) {
+            votes.add(String.format(vote, userDto_1.getId(), rsEventDto_1.getId(), time));
+        }
+        votes.add(String.format(vote, other.getId(), rsEventDto_1.getId(), time));
+        mockMvc.perform(post("/rs/votes").content("[" + String.join(",", votes) + "]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(voteCapacity + 1)));
+        int voted = voteRepository.findAll().size();
+
+        // userDto_1 的令牌已经用完，整批拒绝，other 的那一票也不会执行，取走的令牌退回
+        String batch = "[" + String.format(vote, other.getId(), rsEventDto_1.getId(), time) + ","
+                + String.format(vote, userDto_1.getId(), rsEventDto_1.getId(), time) + "]";
+        StatementBudget.perform(mockMvc, post("/rs/votes").content(batch)
+                .contentType(MediaType.APPLICATION_JSON), 0)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"))
+                .andExpect(jsonPath("$.error", is("too many votes")));
+        assertEquals(voted, voteRepository.findAll().size());
+
+        List<String> rest = new ArrayList<>();
+        for (int i = 1; i < voteCapacity; i++) {
+            rest.add(String.format(vote, other.getId(), rsEventDto_1.getId(), time));
+        }
+        mockMvc.perform(post("/rs/votes").content("[" + String.join(",", rest) + "]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRejectVoteBatchOverBucketCapacity() throws Exception {
+        setData();
+        String vote = String.format("{\"userId\":%d,\"rsEventId\":%d,\"time\":\"%s\",\"voteNum\":1}",
+                userDto_1.getId(), rsEventDto_1.getId(), LocalDateTime.now().toString());
+        List<String> votes = new ArrayList<>();
+        for (int i = 0; i <= voteCapacity; i++) {
+            votes.add(vote);
+        }
+        StatementBudget.perform(mockMvc, post("/rs/votes").content("[" + String.join(",", votes) + "]")
+                .contentType(MediaType.APPLICATION_JSON), 0)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("too many votes in one batch")));
+        // 超长的批量不占令牌
+        mockMvc.perform(post("/rs/votes").content("[" + String.join(",", votes.subList(0, voteCapacity)) + "]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRateLimitBuyByClientAddress() throws Exception {
+        setData();
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 1; i <= buyCapacity; i++) {
+            mockMvc.perform(post("/rs/buy/{id}", rsEventDto_1.getId()).with(client)
+                    .content(objectMapper.writeValueAsString(Trade.builder().amount(i).rank(1).build()))
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+        }
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto_1.getId()).with(client)
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(100).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests());
+        // 请求体里的字段换不到新的桶，同一条热搜的其他客户端不受影响
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto_1.getId()).with(client)
+                .content("{\"amount\":101,\"rank\":1,\"userId\":" + userDto_1.getId() + "}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests());
+        mockMvc.perform(post("/rs/buy/{id}", rsEventDto_1.getId()).with(clientAddress("10.0.1.1"))
+                .content(objectMapper.writeValueAsString(Trade.builder().amount(102).rank(1).build()))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+    }
+
+    private static RequestPostProcessor clientAddress(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
+    @Test
+    public void shouldSearchRsEventByNameAndKeywordRankedByVoteNum() throws Exception {
+        setData();
+        mockMvc.perform(get("/rs/search").param("q", "号事件").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].eventName", is("6.6号事件")))
+                .andExpect(jsonPath("$[1].eventName", is("5.5号事件")));
+        mockMvc.perform(get("/rs/search").param("q", "号事件").param("page", "3").param("size", "2"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].eventName", is("2.2号事件")));
+        mockMvc.perform(get("/rs/search").param("q", "经济"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].eventName", is("2.2号事件")))
+                .andExpect(jsonPath("$[1].eventName", is("1.猪肉又涨价了啊！")));
+        mockMvc.perform(get("/rs/search").param("q", "猪"))
+                .andExpect(jsonPath("$", hasSize(1)));
+        mockMvc.perform(get("/rs/search").param("q", "FORTEST"))
+                .andExpect(jsonPath("$", hasSize(4)));
+        mockMvc.perform(get("/rs/search").param("q", " "))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("invalid query")));
+    }
+
+    @Test
+    public void shouldUpdateSearchAfterAddRsEventAndDeleteUser() throws Exception {
+        setData();
+        String jsonValue = "{\"eventName\":\"牛肉也涨价了\",\"keyword\":\"经济\",\"userId\": " + userDto_1.getId() + "}";
+        mockMvc.perform(post("/rs/event").content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+        mockMvc.perform(get("/rs/search").param("q", "涨价"))
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        mockMvc.perform(delete("/user/{id}", userDto_1.getId())).andExpect(status().isOk());
+
+        mockMvc.perform(get("/rs/search").param("q", "涨价"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(get("/rs/search").param("q", "号事件"))
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+
+    @Test
+    public void shouldGetTopKeywordsByVoteNum() throws Exception {
+        setData();
+        // 其他用例的投票也会累加进来，按当前热搜的票数重新统计
+        keywordHeavyHitters.load();
+        mockMvc.perform(get("/rs/keywords/top").param("k", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].keyword", is("forTest")))
+                .andExpect(jsonPath("$[0].voteNum", is(18)))
+                .andExpect(jsonPath("$[1].keyword", is("经济")))
+                .andExpect(jsonPath("$[1].voteNum", is(3)))
+                .andExpect(jsonPath("$[1].error", is(0)));
+
+        UserDto save = userRepository.save(userDto);
+        String jsonValue = String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":10}",
+                save.getId(), LocalDateTime.now().toString());
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto_1.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/rs/keywords/top").param("k", "1"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].keyword", is("forTest")));
+        mockMvc.perform(get("/rs/keywords/top").param("k", "2"))
+                .andExpect(jsonPath("$[1].keyword", is("经济")))
+                .andExpect(jsonPath("$[1].voteNum", is(13)));
+        mockMvc.perform(get("/rs/keywords/top").param("k", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("invalid k")));
+    }
 }
@@ -0,0 +1,27 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.metrics.SqlStatementCounter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 断言一次请求执行的 SQL 语句不超过预算，N+1 查询一旦出现测试就会失败
+public class StatementBudget {
+    private StatementBudget() {
+    }
+
+    public static ResultActions perform(MockMvc mockMvc, RequestBuilder request, int maxStatements)
+            throws Exception {
+        ResultActions result;
+        int count;
+        try (SqlStatementCounter.Scope scope = SqlStatementCounter.open("test")) {
+            result = mockMvc.perform(request);
+            count = scope.getCount();
+        }
+        assertTrue(count <= maxStatements,
+                String.format("expected at most %d sql statements but was %d", maxStatements, count));
+        return result;
+    }
+}
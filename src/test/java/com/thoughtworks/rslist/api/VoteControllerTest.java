@@ -19,7 +19,9 @@ import java.time.LocalDateTime;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -107,4 +109,71 @@ class VoteControllerTest {
 
 
     }
+
+    @Test
+    public void shouldAnswerNotModifiedUntilVoteRecordChanges() throws Exception {
+      String etag = mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageIndex", "1"))
+              .andExpect(status().isOk())
+              .andReturn().getResponse().getHeader("ETag");
+
+      mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageIndex", "1")
+              .header("If-None-Match", etag))
+              .andExpect(status().isNotModified());
+
+      voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).localDateTime(LocalDateTime.now())
+              .num(1).build());
+
+      mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageIndex", "1")
+              .header("If-None-Match", etag))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    public void shouldGetVoteRecordByCursor() throws Exception {
+      for (int i = 1; i <= 4; i++) {
+        voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto)
+                .localDateTime(LocalDateTime.now().plusSeconds(i)).num(5 + i).build());
+      }
+
+      String cursor = mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageSize", "2"))
+              .andExpect(jsonPath("$", hasSize(2)))
+              .andExpect(jsonPath("$[0].voteNum",is(5)))
+              .andExpect(jsonPath("$[1].voteNum",is(6)))
+              .andReturn().getResponse().getHeader(PageCursor.HEADER);
+
+      cursor = mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageSize", "2")
+              .param("cursor", cursor))
+              .andExpect(jsonPath("$", hasSize(2)))
+              .andExpect(jsonPath("$[0].voteNum",is(7)))
+              .andExpect(jsonPath("$[1].voteNum",is(8)))
+              .andReturn().getResponse().getHeader(PageCursor.HEADER);
+
+      mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageSize", "2")
+              .param("cursor", cursor))
+              .andExpect(jsonPath("$", hasSize(1)))
+              .andExpect(jsonPath("$[0].voteNum",is(9)))
+              .andExpect(header().doesNotExist(PageCursor.HEADER));
+    }
+
+    @Test
+    public void shouldGetErrorWhenVoteRecordCursorInvalid() throws Exception {
+      mockMvc.perform(get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("cursor", "bad"))
+              .andExpect(status().isBadRequest())
+              .andExpect(jsonPath("$.error",is("invalid cursor")));
+    }
+
+    @Test
+    public void shouldGetVoteRecordWithinStatementBudget() throws Exception {
+      StatementBudget.perform(mockMvc, get("/voteRecord").param("userId",String.valueOf(userDto.getId()))
+              .param("rsEventId",String.valueOf(rsEventDto.getId())).param("pageIndex", "1"), 1)
+              .andExpect(jsonPath("$", hasSize(1)));
+    }
 }
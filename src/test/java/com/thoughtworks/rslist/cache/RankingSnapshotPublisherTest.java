@@ -0,0 +1,112 @@
+package com.thoughtworks.rslist.cache;
+
+import com.thoughtworks.rslist.api.PageCursor;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "rs.snapshot.debounce=3600000",
+        "rs.snapshot.page-size=5",
+        "rs.snapshot.pages=2"})
+@AutoConfigureMockMvc
+class RankingSnapshotPublisherTest {
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    RankingSnapshotPublisher snapshotPublisher;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RsEventRepository rsEventRepository;
+    @Autowired
+    VoteRepository voteRepository;
+    List<RsEventDto> rsEventDtos;
+
+    @BeforeEach
+    void setUp() {
+        voteRepository.deleteAll();
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+        UserDto userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+                .gender("female").phone("18888888888").voteNum(10).build());
+        rsEventDtos = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            rsEventDtos.add(RsEventDto.builder().user(userDto).eventName("event " + i).keyword("keyword")
+                    .voteNum(i).build());
+        }
+        rsEventDtos = rsEventRepository.saveAll(rsEventDtos);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldServeSnapshotIdenticalToSerializedResponse() throws Exception {
+        assertFalse(snapshotPublisher.isClean());
+        MvcResult sorted = mockMvc.perform(get("/rs/sortedevents")).andReturn();
+        MvcResult firstPage = mockMvc.perform(get("/rs/list").param("start", "1").param("end", "5")).andReturn();
+        MvcResult secondPage = mockMvc.perform(get("/rs/list")
+                .param("cursor", firstPage.getResponse().getHeader(PageCursor.HEADER)).param("size", "5"))
+                .andReturn();
+
+        snapshotPublisher.publish();
+
+        assertTrue(snapshotPublisher.isClean());
+        assertSameResponse(sorted, mockMvc.perform(get("/rs/sortedevents")).andReturn());
+        assertSameResponse(firstPage,
+                mockMvc.perform(get("/rs/list").param("start", "1").param("end", "5")).andReturn());
+        assertSameResponse(secondPage, mockMvc.perform(get("/rs/list")
+                .param("cursor", firstPage.getResponse().getHeader(PageCursor.HEADER)).param("size", "5"))
+                .andReturn());
+    }
+
+    @Test
+    void shouldNotServeSnapshotAfterChange() throws Exception {
+        snapshotPublisher.publish();
+        RsEventDto rsEventDto = rsEventDtos.get(0);
+        rsEventDto.setVoteNum(100);
+        rsEventRepository.save(rsEventDto);
+
+        assertFalse(snapshotPublisher.isClean());
+        mockMvc.perform(get("/rs/sortedevents"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(12)))
+                .andExpect(jsonPath("$[0].eventName", is("event 1")))
+                .andExpect(jsonPath("$[0].voteNum", is(100)));
+        mockMvc.perform(get("/rs/list").param("start", "1").param("end", "5"))
+                .andExpect(jsonPath("$[0].voteNum", is(100)));
+    }
+
+    private void assertSameResponse(MvcResult expected, MvcResult actual) throws Exception {
+        assertEquals(200, actual.getResponse().getStatus());
+        assertEquals(expected.getResponse().getContentAsString(), actual.getResponse().getContentAsString());
+        assertEquals(expected.getResponse().getHeader(PageCursor.HEADER),
+                actual.getResponse().getHeader(PageCursor.HEADER));
+    }
+}
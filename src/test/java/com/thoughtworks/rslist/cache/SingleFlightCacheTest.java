@@ -0,0 +1,105 @@
+package com.thoughtworks.rslist.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightCacheTest {
+
+    @Test
+    void shouldLoadOnceAndHitAfterwards() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("value", cache.get("key", () -> "value" + (loads.incrementAndGet() > 1 ? "again" : "")));
+        assertEquals("value", cache.get("key", () -> "value" + (loads.incrementAndGet() > 1 ? "again" : "")));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+        assertEquals(1, cache.stats().getLoads());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedWhenFull() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(2);
+        cache.get("a", () -> "a");
+        cache.get("b", () -> "b");
+        cache.get("a", () -> "a");
+        cache.get("c", () -> "c");
+
+        assertEquals(2, cache.stats().getSize());
+        assertEquals("a", cache.get("a", () -> "a2"));
+        assertEquals("b2", cache.get("b", () -> "b2"));
+    }
+
+    @Test
+    void shouldReloadAfterInvalidate() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(10);
+        cache.get("key", () -> "old");
+        cache.invalidateAll();
+
+        assertEquals("new", cache.get("key", () -> "new"));
+    }
+
+    @Test
+    void shouldNotCacheFailedLoad() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(10);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.get("key", () -> {
+            throw new IllegalArgumentException();
+        }));
+        assertEquals("value", cache.get("key", () -> "value"));
+    }
+
+    @Test
+    void shouldCoalesceConcurrentMisses() throws Exception {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("key", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "value";
+            })));
+            loading.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> cache.get("key", () -> {
+                    loads.incrementAndGet();
+                    return "value";
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.thoughtworks.rslist.datasource;
+
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.repository.OffsetPageRequest;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// 主库和从库是两个互不同步的内存 H2，从库里放一条主库没有的热搜，用来区分查询落在哪个库；
+// 心跳由测试手动复制到从库，定时心跳的间隔设得很长，不干扰测得的延迟
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaDataSourceConfigTest.PRIMARY,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "rs.datasource.replica.url=" + ReplicaDataSourceConfigTest.REPLICA,
+        "rs.datasource.replica.heartbeat-interval=3600000",
+        "rs.datasource.replica.lag-tolerance=60000"})
+@AutoConfigureMockMvc
+class ReplicaDataSourceConfigTest {
+    static final String PRIMARY = "jdbc:h2:mem:routing-primary;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    static final String REPLICA = "jdbc:h2:mem:routing-replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    ReplicaDataSourceConfig replicaDataSourceConfig;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RsEventRepository rsEventRepository;
+    UserDto userDto;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists rs_event (id int primary key, event_name varchar(255), "
+                    + "keyword varchar(255), vote_num int, rs_rank int, user_id int)");
+            statement.execute("merge into rs_event values (1, 'from replica', 'keyword', 7, 0, null)");
+            statement.execute("create table if not exists replica_heartbeat (id int primary key, beat bigint not null)");
+        }
+        replicaDataSourceConfig.heartbeat();
+        replicateHeartbeat(System.currentTimeMillis());
+        replicaDataSourceConfig.heartbeat();
+        userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+                .gender("female").phone("18888888888").voteNum(10).build());
+        rsEventRepository.save(RsEventDto.builder().user(userDto).eventName("from primary").keyword("keyword")
+                .voteNum(0).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldReadListedRsEventsFromReplica() {
+        List<RsEvent> rsEvents = rsEventRepository.findListed(new OffsetPageRequest(0, 1));
+
+        assertEquals(1, rsEvents.size());
+        assertEquals("from replica", rsEvents.get(0).getEventName());
+    }
+
+    @Test
+    void shouldLoadCachedRsEventListFromPrimaryWhenReplicaHasCaughtUp() throws Exception {
+        mockMvc.perform(get("/rs/list").param("start", "1").param("end", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].eventName", is("from primary")));
+    }
+
+    @Test
+    void shouldReadVoteRecordsFromPrimaryWhenReplicaHasCaughtUp() throws Exception {
+        // 从库上没有 vote 表，查询落到从库会失败
+        mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+                .param("rsEventId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    void shouldReadRsEventListFromPrimaryWhenReplicaLagsBehind() throws Exception {
+        replicateHeartbeat(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10));
+        replicaDataSourceConfig.heartbeat();
+
+        mockMvc.perform(get("/rs/list").param("start", "1").param("end", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].eventName", is("from primary")));
+    }
+
+    @Test
+    void shouldAddRsEventOnPrimary() throws Exception {
+        String jsonValue = String.format("{\"eventName\":\"added\",\"keyword\":\"keyword\",\"userId\":%d}",
+                userDto.getId());
+        mockMvc.perform(post("/rs/event").content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        assertNotNull(rsEventRepository.findByEventName("added"));
+    }
+
+    private void replicateHeartbeat(long beat) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("merge into replica_heartbeat values (1, " + beat + ")");
+        }
+    }
+}
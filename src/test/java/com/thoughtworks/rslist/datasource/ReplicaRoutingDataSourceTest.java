@@ -0,0 +1,145 @@
+package com.thoughtworks.rslist.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 主库和从库是两个互不同步的内存 H2，测试里手动把主库的心跳复制到从库
+class ReplicaRoutingDataSourceTest {
+    private static final String PRIMARY = "jdbc:h2:mem:routing-unit-primary";
+    private static final String REPLICA = "jdbc:h2:mem:routing-unit-replica";
+    // 连接全部关闭后内存库仍然保留，心跳表在两次取连接之间不会丢
+    private static final String KEEP_OPEN = ";DB_CLOSE_DELAY=-1";
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        execute(PRIMARY, "drop table if exists replica_heartbeat");
+        execute(REPLICA, "drop table if exists replica_heartbeat");
+        execute(REPLICA, "create table replica_heartbeat (id int primary key, beat bigint not null)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clear();
+    }
+
+    @Test
+    void shouldReadFromPrimaryUntilReplicaLagMeasured() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(REPLICA, 60000);
+
+        assertEquals(PRIMARY, urlOf(dataSource, true));
+        dataSource.heartbeat();
+        assertEquals(PRIMARY, urlOf(dataSource, true));
+    }
+
+    @Test
+    void shouldReadFromReplicaWhenItHasCaughtUp() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(REPLICA, 0);
+        dataSource.heartbeat();
+        replicate();
+        dataSource.heartbeat();
+
+        assertEquals(0, dataSource.getReplicaLagMillis());
+        assertEquals(REPLICA, urlOf(dataSource, true));
+    }
+
+    @Test
+    void shouldReadFromPrimaryWhenReplicaLagsBehind() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(REPLICA, 60000);
+        execute(REPLICA, "insert into replica_heartbeat values (1, "
+                + (System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10)) + ")");
+        dataSource.heartbeat();
+        dataSource.heartbeat();
+
+        assertTrue(dataSource.getReplicaLagMillis() >= TimeUnit.MINUTES.toMillis(10));
+        assertEquals(PRIMARY, urlOf(dataSource, true));
+    }
+
+    @Test
+    void shouldReadFromPrimaryWhenReplicaHasNoHeartbeat() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(REPLICA, 60000);
+        execute(REPLICA, "drop table replica_heartbeat");
+        dataSource.heartbeat();
+        dataSource.heartbeat();
+
+        assertEquals(Long.MAX_VALUE, dataSource.getReplicaLagMillis());
+        assertEquals(PRIMARY, urlOf(dataSource, true));
+    }
+
+    @Test
+    void shouldReadFromPrimaryInsideReadFromPrimary() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(REPLICA, 0);
+        dataSource.heartbeat();
+        replicate();
+        dataSource.heartbeat();
+
+        // 嵌套的调用返回后外层仍然读主库，最外层返回后恢复读从库
+        assertEquals(PRIMARY, ReplicaRoutingDataSource.readFromPrimary(() -> {
+            ReplicaRoutingDataSource.readFromPrimary(() -> null);
+            try {
+                return urlOf(dataSource, true);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertEquals(REPLICA, urlOf(dataSource, true));
+    }
+
+    @Test
+    void shouldWriteToPrimary() throws SQLException {
+        ReplicaRoutingDataSource dataSource = routing(REPLICA, 0);
+        dataSource.heartbeat();
+        replicate();
+        dataSource.heartbeat();
+
+        assertEquals(PRIMARY, urlOf(dataSource, false));
+    }
+
+    @Test
+    void shouldFallBackToPrimaryWhenReplicaUnavailable() throws SQLException {
+        // 容忍任意延迟，测量失败也会尝试从库
+        ReplicaRoutingDataSource dataSource = routing("jdbc:unknown:replica", Long.MAX_VALUE);
+
+        assertEquals(PRIMARY, urlOf(dataSource, true));
+    }
+
+    private ReplicaRoutingDataSource routing(String replicaUrl, long lagToleranceMillis) {
+        return new ReplicaRoutingDataSource(new DriverManagerDataSource(PRIMARY + KEEP_OPEN),
+                new DriverManagerDataSource(replicaUrl + KEEP_OPEN), lagToleranceMillis, 60000);
+    }
+
+    private String urlOf(ReplicaRoutingDataSource dataSource, boolean readOnly) throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL();
+        }
+    }
+
+    private void replicate() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(PRIMARY + KEEP_OPEN);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select beat from replica_heartbeat where id = 1")) {
+            resultSet.next();
+            execute(REPLICA, "merge into replica_heartbeat values (1, " + resultSet.getLong(1) + ")");
+        }
+    }
+
+    private static void execute(String url, String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url + KEEP_OPEN);
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.thoughtworks.rslist.index;
+
+import com.thoughtworks.rslist.domain.RankedRsEvent;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteFoldLock;
+import com.thoughtworks.rslist.service.WriteBehindVoteCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class RsEventIndexTest {
+    RsEventIndex rsEventIndex;
+
+    @Mock
+    RsEventRepository rsEventRepository;
+    @Mock
+    WriteBehindVoteCounter voteCounter;
+    @Mock
+    ShardedVoteCounter shardedVoteCounter;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        List<RankedRsEvent> rsEvents = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            rsEvents.add(new RankedRsEvent(i, "event " + i, "keyword", i, 0));
+        }
+        when(rsEventRepository.findAllRanked()).thenReturn(rsEvents);
+        rsEventIndex = new RsEventIndex(rsEventRepository, voteCounter, shardedVoteCounter, new VoteFoldLock());
+        rsEventIndex.load();
+    }
+
+    private List<String> names(List<RsEvent> rsEvents) {
+        return rsEvents.stream().map(RsEvent::getEventName).collect(Collectors.toList());
+    }
+
+    @Test
+    void shouldRankByVoteNumDesc() {
+        List<RsEvent> ranked = rsEventIndex.ranked(0, rsEventIndex.size());
+
+        assertEquals(6, ranked.size());
+        assertEquals("event 6", ranked.get(0).getEventName());
+        assertEquals(1, ranked.get(0).getRsRank());
+        assertEquals("event 1", ranked.get(5).getEventName());
+        assertEquals(6, ranked.get(5).getRsRank());
+    }
+
+    @Test
+    void shouldKeepInsertOrderWhenVoteNumEqual() {
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 7, "event 7", "keyword", 6, 0));
+
+        assertEquals("event 6", rsEventIndex.ranked(0, 1).get(0).getEventName());
+        assertEquals("event 7", rsEventIndex.ranked(1, 2).get(0).getEventName());
+    }
+
+    @Test
+    void shouldKeepIndexedVoteNumWhenSavedWithStaleSnapshot() {
+        rsEventIndex.onChange(RsEventChange.voted(1, 10));
+        // 购买时保存的实体是投票提交之前加载的，票数仍为 1
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 1, "event 1", "keyword", 1, 2, false));
+
+        List<RsEvent> ranked = rsEventIndex.ranked(0, rsEventIndex.size());
+        assertEquals("event 1", ranked.get(1).getEventName());
+        assertEquals(11, ranked.get(1).getVoteNum());
+        assertEquals(2, ranked.get(1).getRsRank());
+    }
+
+    @Test
+    void shouldApplyVoteNumWrittenBySave() {
+        rsEventIndex.onChange(RsEventChange.voted(1, 10));
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 1, "event 1", "keyword", 100, 0, true));
+
+        assertEquals("event 1", rsEventIndex.ranked(0, 1).get(0).getEventName());
+        assertEquals(100, rsEventIndex.ranked(0, 1).get(0).getVoteNum());
+    }
+
+    @Test
+    void shouldPutBuyedEventOnItsRank() {
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 1, "event 1", "keyword", 1, 2));
+
+        List<RsEvent> ranked = rsEventIndex.ranked(0, rsEventIndex.size());
+        assertEquals(6, ranked.size());
+        assertEquals("event 6", ranked.get(0).getEventName());
+        assertEquals("event 1", ranked.get(1).getEventName());
+        assertEquals(2, ranked.get(1).getRsRank());
+        assertEquals("event 5", ranked.get(2).getEventName());
+        assertEquals("event 2", ranked.get(5).getEventName());
+    }
+
+    @Test
+    void shouldAppendBuyedEventWhenRankBeyondList() {
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 6, "event 6", "keyword", 6, 100));
+
+        List<RsEvent> ranked = rsEventIndex.ranked(0, rsEventIndex.size());
+        assertEquals("event 5", ranked.get(0).getEventName());
+        assertEquals("event 6", ranked.get(5).getEventName());
+        assertEquals(6, ranked.get(5).getRsRank());
+    }
+
+    @Test
+    void shouldReturnSliceWithFinalRank() {
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 1, "event 1", "keyword", 1, 3));
+
+        List<RsEvent> slice = rsEventIndex.ranked(1, 4);
+        assertEquals(3, slice.size());
+        assertEquals("event 5", slice.get(0).getEventName());
+        assertEquals(2, slice.get(0).getRsRank());
+        assertEquals("event 1", slice.get(1).getEventName());
+        assertEquals(3, slice.get(1).getRsRank());
+        assertEquals("event 4", slice.get(2).getEventName());
+    }
+
+    @Test
+    void shouldReorderWhenVoted() {
+        rsEventIndex.onChange(RsEventChange.voted(1, 10));
+
+        List<RsEvent> top = rsEventIndex.ranked(0, 1);
+        assertEquals("event 1", top.get(0).getEventName());
+        assertEquals(11, top.get(0).getVoteNum());
+    }
+
+    @Test
+    void shouldDropRemovedEvent() {
+        rsEventIndex.onChange(RsEventChange.removed(6));
+
+        assertEquals(5, rsEventIndex.size());
+        assertEquals("event 5", rsEventIndex.ranked(0, 1).get(0).getEventName());
+    }
+
+    @Test
+    void shouldFindEventByPositionInIdOrder() {
+        rsEventIndex.onChange(RsEventChange.removed(2));
+
+        assertEquals("event 1", rsEventIndex.at(1).getEventName());
+        assertEquals("event 3", rsEventIndex.at(2).getEventName());
+        assertEquals("event 6", rsEventIndex.at(5).getEventName());
+        assertNull(rsEventIndex.at(0));
+        assertNull(rsEventIndex.at(6));
+    }
+
+    @Test
+    void shouldFindRankOfSingleEventConsistentWithRanking() {
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 2, "event 2", "keyword", 2, 1));
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 3, "event 3", "keyword", 3, 4));
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 4, "event 4", "keyword", 4, 4));
+        rsEventIndex.onChange(new RsEventChange(RsEventChange.Type.SAVED, 5, "event 5", "keyword", 5, 20));
+
+        for (RsEvent rsEvent : rsEventIndex.ranked(0, rsEventIndex.size())) {
+            RsEvent ranked = rsEventIndex.rankOf(rsEvent.getUserId());
+            assertEquals(rsEvent.getEventName(), ranked.getEventName());
+            assertEquals(rsEvent.getRsRank(), ranked.getRsRank());
+        }
+        assertNull(rsEventIndex.rankOf(3));
+        assertNull(rsEventIndex.rankOf(100));
+    }
+
+    @Test
+    void shouldPickTopAmongIdsSameAsFullSort() {
+        Random random = new Random(7);
+        List<RankedRsEvent> rsEvents = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            rsEvents.add(new RankedRsEvent(i, "event " + i, "keyword", random.nextInt(50), i % 100 == 0 ? i / 100 : 0));
+        }
+        when(rsEventRepository.findAllRanked()).thenReturn(rsEvents);
+        rsEventIndex.load();
+
+        // 5 条走堆选择，500 条走按票数顺序扫描
+        for (int count : new int[]{5, 500}) {
+            Set<Integer> ids = new HashSet<>();
+            while (ids.size() < count) {
+                ids.add(random.nextInt(1000) + 1);
+            }
+            List<String> expected = rsEvents.stream()
+                    .filter(rsEvent -> ids.contains(rsEvent.getId()))
+                    .sorted(Comparator.comparingInt(RankedRsEvent::getVoteNum).reversed()
+                            .thenComparingInt(RankedRsEvent::getId))
+                    .map(RankedRsEvent::getEventName)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected.subList(0, 3), names(rsEventIndex.topAmong(ids, 0, 3)));
+            assertEquals(expected.subList(2, 5), names(rsEventIndex.topAmong(ids, 2, 3)));
+            assertEquals(0, rsEventIndex.topAmong(ids, count, 3).size());
+        }
+    }
+}
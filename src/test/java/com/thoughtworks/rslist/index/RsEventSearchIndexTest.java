@@ -0,0 +1,77 @@
+package com.thoughtworks.rslist.index;
+
+import com.thoughtworks.rslist.domain.RankedRsEvent;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteFoldLock;
+import com.thoughtworks.rslist.service.WriteBehindVoteCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class RsEventSearchIndexTest {
+    RsEventIndex rsEventIndex;
+    RsEventSearchIndex searchIndex;
+
+    @Mock
+    RsEventRepository rsEventRepository;
+    @Mock
+    WriteBehindVoteCounter voteCounter;
+    @Mock
+    ShardedVoteCounter shardedVoteCounter;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        when(rsEventRepository.findAllRanked()).thenReturn(Arrays.asList(
+                new RankedRsEvent(1, "abxbc", "keyword", 1, 0),
+                new RankedRsEvent(2, "xabc", "keyword", 2, 0),
+                new RankedRsEvent(3, "event", "ABC", 3, 0)));
+        rsEventIndex = new RsEventIndex(rsEventRepository, voteCounter, shardedVoteCounter, new VoteFoldLock());
+        rsEventIndex.load();
+        searchIndex = new RsEventSearchIndex(rsEventRepository, rsEventIndex);
+        searchIndex.load();
+    }
+
+    private List<String> names(List<RsEvent> rsEvents) {
+        return rsEvents.stream().map(RsEvent::getEventName).collect(Collectors.toList());
+    }
+
+    @Test
+    void shouldMatchSubstringOnlyAndRankByVoteNum() {
+        assertEquals(Arrays.asList("event", "xabc"), names(searchIndex.search("abc", 0, 10)));
+        assertEquals(Arrays.asList("event", "xabc", "abxbc"), names(searchIndex.search("b", 0, 10)));
+        assertEquals(Arrays.asList("xabc"), names(searchIndex.search("abc", 1, 10)));
+        assertEquals(0, searchIndex.search("abcd", 0, 10).size());
+    }
+
+    @Test
+    void shouldFollowSaveRemoveAndVote() {
+        RsEventDto rsEventDto = RsEventDto.builder().id(4).eventName("new abc").keyword("k").voteNum(10).build();
+        rsEventIndex.onChange(RsEventChange.saved(rsEventDto));
+        searchIndex.onChange(RsEventChange.saved(rsEventDto));
+        rsEventIndex.onChange(RsEventChange.removed(3));
+        searchIndex.onChange(RsEventChange.removed(3));
+        rsEventIndex.onChange(RsEventChange.voted(2, 20));
+        searchIndex.onChange(RsEventChange.voted(2, 20));
+
+        assertEquals(Arrays.asList("xabc", "new abc"), names(searchIndex.search("abc", 0, 10)));
+
+        rsEventDto.setEventName("renamed");
+        rsEventIndex.onChange(RsEventChange.saved(rsEventDto));
+        searchIndex.onChange(RsEventChange.saved(rsEventDto));
+
+        assertEquals(Arrays.asList("xabc"), names(searchIndex.search("abc", 0, 10)));
+    }
+}
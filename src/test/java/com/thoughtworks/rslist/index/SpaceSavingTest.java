@@ -0,0 +1,60 @@
+package com.thoughtworks.rslist.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+    @Test
+    void shouldCountExactlyWithinCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(3);
+        sketch.add("a", 1);
+        sketch.add("b", 5);
+        sketch.add("a", 2);
+        sketch.add("c", 4);
+        sketch.add("c", 0);
+
+        List<SpaceSaving.Counter<String>> top = sketch.top(5);
+        assertEquals(3, top.size());
+        assertEquals("b", top.get(0).getKey());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals("c", top.get(1).getKey());
+        assertEquals("a", top.get(2).getKey());
+        assertEquals(3, top.get(2).getCount());
+        top.forEach(counter -> assertEquals(0, counter.getError()));
+        assertEquals(12, sketch.getTotal());
+    }
+
+    @Test
+    void shouldBoundErrorAndKeepHeavyHittersOverCapacity() {
+        int capacity = 20;
+        SpaceSaving<Integer> sketch = new SpaceSaving<>(capacity);
+        Map<Integer, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            // 5 个热点各占约 10%，其余分散在 1000 个冷门元素上
+            int key = random.nextInt(2) == 0 ? random.nextInt(5) : 5 + random.nextInt(1000);
+            long weight = 1 + random.nextInt(3);
+            sketch.add(key, weight);
+            exact.merge(key, weight, Long::sum);
+        }
+
+        assertEquals(capacity, sketch.size());
+        long maxError = sketch.getTotal() / capacity;
+        List<SpaceSaving.Counter<Integer>> top = sketch.top(capacity);
+        for (SpaceSaving.Counter<Integer> counter : top) {
+            long actual = exact.get(counter.getKey());
+            assertTrue(counter.getError() <= maxError);
+            assertTrue(counter.getCount() - counter.getError() <= actual && actual <= counter.getCount());
+        }
+        // 热点的真实值远大于 total / capacity，排在最前面
+        top.subList(0, 5).forEach(counter -> assertTrue(counter.getKey() < 5));
+    }
+}
@@ -0,0 +1,72 @@
+package com.thoughtworks.rslist.metrics;
+
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PrometheusEndpointTest {
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RsEventRepository rsEventRepository;
+    @Autowired
+    VoteRepository voteRepository;
+    UserDto userDto;
+    RsEventDto rsEventDto;
+
+    @BeforeEach
+    void setUp() {
+        userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+                .gender("female").phone("18888888888").voteNum(10).build());
+        rsEventDto = rsEventRepository.save(RsEventDto.builder().user(userDto).eventName("event name")
+                .keyword("keyword").voteNum(0).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        voteRepository.deleteAll();
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldExposeServiceRepositoryHibernateAndPoolMetrics() throws Exception {
+        String jsonValue = String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":1}",
+                userDto.getId(), LocalDateTime.now());
+        mockMvc.perform(post("/rs/vote/{id}", rsEventDto.getId())
+                .content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("rs_service_vote_seconds_count")))
+                .andExpect(content().string(containsString("rs_repository_seconds_count{exception=\"none\",method=\"addVoteNum\",repository=\"RsEventRepository\",}")))
+                .andExpect(content().string(containsString("http_server_requests_seconds_count")))
+                .andExpect(content().string(containsString("uri=\"/rs/vote/{id}\"")))
+                .andExpect(content().string(containsString("hibernate_statements_total")))
+                .andExpect(content().string(containsString("hibernate_flushes_total")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")));
+    }
+}
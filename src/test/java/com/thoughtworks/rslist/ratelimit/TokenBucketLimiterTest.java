@@ -0,0 +1,81 @@
+package com.thoughtworks.rslist.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketLimiterTest {
+    long now;
+    TokenBucketLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        now = 0;
+        limiter = new TokenBucketLimiter(3, 2, () -> now);
+    }
+
+    @Test
+    void shouldRejectAfterCapacityIsUsedUp() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a"));
+        }
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("b"));
+    }
+
+    @Test
+    void shouldRefillOverTimeUpToCapacity() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("a");
+        }
+
+        now += TimeUnit.MILLISECONDS.toNanos(500);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+
+        now += TimeUnit.SECONDS.toNanos(60);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a"));
+        }
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    void shouldAcquireSeveralPermitsAllOrNothing() {
+        assertEquals(0, limiter.tryAcquire("a", 2));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.tryAcquire("a", 2));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire("b", 4));
+        assertEquals(0, limiter.tryAcquire("b", 3));
+    }
+
+    @Test
+    void shouldReleasePermitsUpToCapacity() {
+        assertEquals(0, limiter.tryAcquire("a", 3));
+        limiter.release("a", 2);
+
+        assertEquals(0, limiter.tryAcquire("a", 2));
+        assertTrue(limiter.tryAcquire("a") > 0);
+        limiter.release("a", 10);
+        assertEquals(0, limiter.tryAcquire("a", 3));
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    void shouldEvictIdleBuckets() {
+        limiter.tryAcquire("a");
+        now += TimeUnit.SECONDS.toNanos(5);
+        limiter.tryAcquire("b");
+
+        limiter.evictIdle(TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(1, limiter.size());
+    }
+}
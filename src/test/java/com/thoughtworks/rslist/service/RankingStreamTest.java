@@ -0,0 +1,117 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.index.RsEventIndex;
+import com.thoughtworks.rslist.listener.RsEventChange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RankingStreamTest {
+    RankingStream rankingStream;
+    CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        rankingStream.close();
+    }
+
+    @Test
+    void shouldKeepStreamingWhenOneSubscriberStalls() throws Exception {
+        RsEventIndex rsEventIndex = mock(RsEventIndex.class);
+        when(rsEventIndex.rankOf(anyInt())).thenReturn(new RsEvent("event", "keyword", 1, 1, 1));
+        // 只有一个发送线程，发送超时 50 毫秒
+        rankingStream = new RankingStream(rsEventIndex, 60_000, 1, 50, 1);
+        CountDownLatch stalledSends = new CountDownLatch(1);
+        AtomicInteger stalledSendCount = new AtomicInteger();
+        CountDownLatch received = new CountDownLatch(1);
+        rankingStream.subscribe(new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                stalledSendCount.incrementAndGet();
+                stalledSends.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        rankingStream.onChange(RsEventChange.voted(1, 1));
+        rankingStream.dispatch();
+        assertTrue(stalledSends.await(1, TimeUnit.SECONDS));
+
+        rankingStream.subscribe(new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                received.countDown();
+            }
+        });
+        Thread.sleep(100);
+        rankingStream.onChange(RsEventChange.voted(1, 1));
+        rankingStream.dispatch();
+
+        assertTrue(received.await(1, TimeUnit.SECONDS));
+        // 超时的订阅者已被移除，不再安排发送
+        assertEquals(1, stalledSendCount.get());
+    }
+
+    @Test
+    void shouldCapSpareThreadsAndFailStalledSubscribers() throws Exception {
+        RsEventIndex rsEventIndex = mock(RsEventIndex.class);
+        when(rsEventIndex.rankOf(anyInt())).thenReturn(new RsEvent("event", "keyword", 1, 1, 1));
+        // 两个发送线程，最多补一个线程
+        rankingStream = new RankingStream(rsEventIndex, 60_000, 2, 50, 1);
+        CountDownLatch stalledSends = new CountDownLatch(3);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rankingStream.subscribe(new SseEmitter() {
+                @Override
+                public void send(SseEventBuilder builder) {
+                    stalledSends.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public void completeWithError(Throwable ex) {
+                    errors.add(ex);
+                }
+            });
+        }
+        rankingStream.onChange(RsEventChange.voted(1, 1));
+        rankingStream.dispatch();
+        assertFalse(stalledSends.await(200, TimeUnit.MILLISECONDS));
+        // 第三个订阅者的发送排在队列里，等到了补上的一个线程
+        rankingStream.dispatch();
+        assertTrue(stalledSends.await(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        rankingStream.dispatch();
+
+        // 三个订阅者都卡住，线程池只补了一个线程
+        assertEquals(1, rankingStream.getSpareThreads());
+
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(0, rankingStream.getSpareThreads());
+        assertEquals(3, errors.size());
+    }
+}
@@ -0,0 +1,211 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.Trade;
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.TradeDto;
+import com.thoughtworks.rslist.dto.TradeRecordDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeRecordRepository;
+import com.thoughtworks.rslist.repository.TradeRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteShardRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 并发投票 / 购买的压力测试，跑在内存 H2 上，默认的 test 任务不执行，用 ./gradlew stressTest 运行。
+// 线程数和操作数可以通过 -Dstress.threads、-Dstress.operations 调整；-Dstress.events=1 把所有操作集中到一条热搜上，
+// -Dstress.shards=true 打开分片计数（分片数 -Dstress.shard-count），用来对比热点行上的吞吐。
+// H2 1.4.200 的 MVStore 引擎在同一行上有事务回滚时会丢失其他事务已提交的更新（纯 JDBC 也能复现），
+// 这里用 MV_STORE=FALSE 的 PageStore 引擎，不变量的检查结果不受引擎问题影响；
+// 并发购买之间的死锁和 StaleStateException 是正常的冲突，对应的请求计入 rejected。
+@Tag("stress")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stress;MODE=MySQL;DB_CLOSE_DELAY=-1;MV_STORE=FALSE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "rs.vote.shards.enabled=${stress.shards:false}",
+        "rs.vote.shards.count=${stress.shard-count:8}",
+        "rs.vote.shards.compact-interval=3600000"})
+class RsServiceStressTest {
+    private static final int USER_COUNT = 20;
+    private static final int USER_VOTE_NUM = 100;
+    private static final int EVENT_COUNT = Integer.getInteger("stress.events", 3);
+    private static final int RANK_COUNT = 2;
+
+    @Autowired
+    RsService rsService;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RsEventRepository rsEventRepository;
+    @Autowired
+    VoteRepository voteRepository;
+    @Autowired
+    TradeRepository tradeRepository;
+    @Autowired
+    TradeRecordRepository tradeRecordRepository;
+    @Autowired
+    VoteShardRepository voteShardRepository;
+    @Autowired
+    ShardedVoteCounter shardedVoteCounter;
+    List<UserDto> users;
+    List<RsEventDto> rsEvents;
+
+    @BeforeEach
+    void setUp() {
+        users = new ArrayList<>();
+        for (int i = 0; i < USER_COUNT; i++) {
+            users.add(userRepository.save(UserDto.builder().userName("user" + i).age(20).gender("female")
+                    .email("a@b.com").phone("18888888888").voteNum(USER_VOTE_NUM).build()));
+        }
+        rsEvents = new ArrayList<>();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            rsEvents.add(rsEventRepository.save(RsEventDto.builder().eventName("hot " + i).keyword("keyword")
+                    .voteNum(0).user(users.get(i)).build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        voteRepository.deleteAll();
+        voteShardRepository.deleteAll();
+        tradeRecordRepository.deleteAll();
+        rsEventRepository.findAll().forEach(rsEventDto -> {
+            rsEventDto.setTrade(null);
+            rsEventRepository.save(rsEventDto);
+        });
+        tradeRepository.deleteAll();
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldKeepInvariantsUnderConcurrentVoteAndBuy() throws Exception {
+        int threads = Integer.getInteger("stress.threads", 16);
+        int operations = Integer.getInteger("stress.operations", 4000);
+        long[] voteLatencies = new long[operations];
+        long[] buyLatencies = new long[operations];
+        AtomicInteger voteCount = new AtomicInteger();
+        AtomicInteger buyCount = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int rsEventId = rsEvents.get(random.nextInt(EVENT_COUNT)).getId();
+                boolean buy = random.nextInt(5) == 0;
+                long begin = System.nanoTime();
+                try {
+                    if (buy) {
+                        rsService.buy(new Trade(random.nextInt(1, 100_000), random.nextInt(1, RANK_COUNT + 1)),
+                                rsEventId);
+                    } else {
+                        rsService.vote(Vote.builder().userId(users.get(random.nextInt(USER_COUNT)).getId())
+                                .voteNum(random.nextInt(1, 4)).time(LocalDateTime.now()).build(), rsEventId);
+                    }
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                }
+                long latency = System.nanoTime() - begin;
+                if (buy) {
+                    buyLatencies[buyCount.getAndIncrement()] = latency;
+                } else {
+                    voteLatencies[voteCount.getAndIncrement()] = latency;
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        System.out.printf("stress: %d threads, %d operations (%d rejected) in %.1f ms, %.0f ops/s%n",
+                threads, operations, failures.get(), elapsed / 1e6, operations / (elapsed / 1e9));
+        report("vote", Arrays.copyOf(voteLatencies, voteCount.get()));
+        report("buy", Arrays.copyOf(buyLatencies, buyCount.get()));
+
+        // 分片中的票数先合并回热搜，投票记录之和等于热搜票数
+        shardedVoteCounter.compact();
+        Map<Integer, Integer> voteSums = voteRepository.findAll().stream()
+                .collect(Collectors.groupingBy(vote -> vote.getRsEvent().getId(),
+                        Collectors.summingInt(VoteDto::getNum)));
+        for (RsEventDto rsEventDto : rsEventRepository.findAll()) {
+            assertEquals(voteSums.getOrDefault(rsEventDto.getId(), 0).intValue(), rsEventDto.getVoteNum(),
+                    "voteNum of " + rsEventDto.getEventName());
+        }
+        // 用户余票不为负
+        for (UserDto userDto : userRepository.findAll()) {
+            assertTrue(userDto.getVoteNum() >= 0, "voteNum of " + userDto.getUserName());
+        }
+        // 每个被买过的排名恰好一条持有记录
+        Map<Integer, Long> holders = tradeRepository.findAll().stream()
+                .collect(Collectors.groupingBy(TradeDto::getRank, Collectors.counting()));
+        holders.forEach((rank, count) -> assertEquals(1L, count.longValue(), "holders of rank " + rank));
+        // 流水中每个排名最多一条未被替换的记录，且与当前持有记录一致
+        Map<Integer, List<TradeRecordDto>> current = new HashMap<>();
+        tradeRecordRepository.findAll().forEach(record -> {
+            if (!record.isSuperseded()) {
+                current.computeIfAbsent(record.getRank(), rank -> new ArrayList<>()).add(record);
+            }
+        });
+        for (TradeDto tradeDto : tradeRepository.findAll()) {
+            List<TradeRecordDto> records = current.remove(tradeDto.getRank());
+            assertEquals(1, records == null ? 0 : records.size(), "current records of rank " + tradeDto.getRank());
+            assertEquals(tradeDto.getAmount(), records.get(0).getAmount(), "amount of rank " + tradeDto.getRank());
+            assertEquals(tradeDto.getRsEvent().getId(), records.get(0).getRsEventId(),
+                    "holder of rank " + tradeDto.getRank());
+        }
+        assertTrue(current.isEmpty(), "current records without holder: " + current.keySet());
+    }
+
+    private static void report(String name, long[] latencies) {
+        if (latencies.length == 0) {
+            return;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("stress: %s x%d latency ms p50=%.2f p95=%.2f p99=%.2f max=%.2f%n", name, latencies.length,
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
@@ -2,24 +2,38 @@ package com.thoughtworks.rslist.service;
 
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteResult;
 import com.thoughtworks.rslist.dto.RsEventDto;
 import com.thoughtworks.rslist.dto.TradeDto;
 import com.thoughtworks.rslist.dto.UserDto;
 import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.index.RankPriceBook;
+import com.thoughtworks.rslist.listener.RsEventChange;
 import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeRecordRepository;
 import com.thoughtworks.rslist.repository.TradeRepository;
 import com.thoughtworks.rslist.repository.UserRepository;
 import com.thoughtworks.rslist.repository.VoteRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.web.bind.annotation.PostMapping;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -35,13 +49,24 @@ class RsServiceTest {
     VoteRepository voteRepository;
     @Mock
     TradeRepository tradeRepository;
+    @Mock
+    WriteBehindVoteCounter voteCounter;
+    @Mock
+    ShardedVoteCounter shardedVoteCounter;
+    @Mock
+    ApplicationEventPublisher publisher;
+    @Mock
+    RankPriceBook rankPriceBook;
+    @Mock
+    TradeRecordRepository tradeRecordRepository;
     LocalDateTime localDateTime;
     Vote vote;
 
     @BeforeEach
     void setUp() {
         initMocks(this);
-        rsService = new RsService(rsEventRepository, userRepository, voteRepository, tradeRepository);
+        rsService = new RsService(rsEventRepository, userRepository, voteRepository, tradeRepository, voteCounter, shardedVoteCounter, publisher, rankPriceBook, tradeRecordRepository);
+        when(rankPriceBook.mayWin(anyInt(), anyInt())).thenReturn(true);
         localDateTime = LocalDateTime.now();
         vote = Vote.builder().voteNum(2).rsEventId(1).time(localDateTime).userId(1).build();
     }
@@ -69,8 +94,10 @@ class RsServiceTest {
                         .user(userDto)
                         .build();
 
-        when(rsEventRepository.findById(anyInt())).thenReturn(Optional.of(rsEventDto));
-        when(userRepository.findById(anyInt())).thenReturn(Optional.of(userDto));
+        when(userRepository.subtractVoteNum(1, 2)).thenReturn(1);
+        when(rsEventRepository.addVoteNum(1, 2)).thenReturn(1);
+        when(rsEventRepository.getOne(1)).thenReturn(rsEventDto);
+        when(userRepository.getOne(1)).thenReturn(userDto);
         // when
         rsService.vote(vote, 1);
         // then
@@ -82,21 +109,110 @@ class RsServiceTest {
                                 .user(userDto)
                                 .rsEvent(rsEventDto)
                                 .build());
-        verify(userRepository).save(userDto);
-        verify(rsEventRepository).save(rsEventDto);
+        verify(publisher).publishEvent(any(RsEventChange.class));
+        verify(userRepository, never()).findById(anyInt());
+        verify(rsEventRepository, never()).findById(anyInt());
+    }
+
+    @Test
+    void shouldStampVoteTimeWhenMissing() {
+        // given
+        Vote withoutTime = Vote.builder().voteNum(2).rsEventId(1).userId(1).build();
+        when(userRepository.subtractVoteNum(1, 2)).thenReturn(1);
+        when(rsEventRepository.addVoteNum(1, 2)).thenReturn(1);
+        // when
+        rsService.vote(withoutTime, 1);
+        // then
+        verify(voteRepository).save(argThat(voteDto -> voteDto.getLocalDateTime() != null));
+    }
+
+    @Test
+    void shouldAccumulateVoteNumInMemoryWhenWriteBehindEnabled() {
+        // given
+        UserDto userDto =
+                UserDto.builder()
+                        .voteNum(5)
+                        .phone("18888888888")
+                        .gender("female")
+                        .email("a@b.com")
+                        .age(19)
+                        .userName("xiaoli")
+                        .id(2)
+                        .build();
+        RsEventDto rsEventDto =
+                RsEventDto.builder()
+                        .eventName("event name")
+                        .id(1)
+                        .keyword("keyword")
+                        .voteNum(2)
+                        .user(userDto)
+                        .build();
+
+        when(userRepository.subtractVoteNum(1, 2)).thenReturn(1);
+        when(rsEventRepository.existsById(1)).thenReturn(true);
+        when(rsEventRepository.getOne(1)).thenReturn(rsEventDto);
+        when(userRepository.getOne(1)).thenReturn(userDto);
+        when(voteCounter.isEnabled()).thenReturn(true);
+        // when
+        rsService.vote(vote, 1);
+        // then
+        verify(voteRepository)
+                .save(
+                        VoteDto.builder()
+                                .num(2)
+                                .localDateTime(localDateTime)
+                                .user(userDto)
+                                .rsEvent(rsEventDto)
+                                .build());
+        verify(voteCounter).add(1, 2);
+        verify(rsEventRepository, never()).addVoteNum(anyInt(), anyInt());
     }
 
     @Test
     void shouldThrowExceptionWhenUserNotExist() {
         // given
-        when(rsEventRepository.findById(anyInt())).thenReturn(Optional.empty());
-        when(userRepository.findById(anyInt())).thenReturn(Optional.empty());
+        when(userRepository.subtractVoteNum(anyInt(), anyInt())).thenReturn(0);
+        //when&then
+        assertThrows(
+                RuntimeException.class,
+                () -> {
+                    rsService.vote(vote, 1);
+                });
+        verify(rsEventRepository, never()).addVoteNum(anyInt(), anyInt());
+        verify(voteRepository, never()).save(any());
+    }
+
+    @Test
+    void shouldThrowExceptionWhenRsEventNotExist() {
+        // given
+        when(userRepository.subtractVoteNum(1, 2)).thenReturn(1);
+        when(rsEventRepository.addVoteNum(1, 2)).thenReturn(0);
         //when&then
         assertThrows(
                 RuntimeException.class,
                 () -> {
                     rsService.vote(vote, 1);
                 });
+        verify(userRepository).addVoteNum(1, 2);
+        verify(voteRepository, never()).save(any());
+    }
+
+    @Test
+    void shouldReportEachVoteResultWhenVoteAll() {
+        // given
+        Vote another = Vote.builder().voteNum(3).rsEventId(2).time(localDateTime).userId(1).build();
+        when(rsEventRepository.addVoteNum(1, 2)).thenReturn(1);
+        when(userRepository.subtractVoteNum(1, 2)).thenReturn(1);
+        when(userRepository.subtractVoteNum(1, 3)).thenReturn(1);
+        when(rsEventRepository.addVoteNum(2, 3)).thenReturn(0);
+        // when
+        List<VoteResult> results = rsService.voteAll(Arrays.asList(vote, another));
+        // then
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(2, results.get(1).getRsEventId());
+        verify(userRepository).addVoteNum(1, 3);
+        verify(voteRepository).saveAll(argThat(voteDtos -> ((List<VoteDto>) voteDtos).size() == 1));
     }
 
     @Test
@@ -175,7 +291,7 @@ class RsServiceTest {
                 .rsEvent(rsEventDto)
                 .build();
 
-        when(tradeRepository.findByRank(10)).thenReturn(tradeDto);
+        when(tradeRepository.findByRankForUpdate(10)).thenReturn(tradeDto);
         when(rsEventRepository.findById(anyInt())).thenReturn(Optional.of(rsEventDtoFotTestBuy));
 
         // when&&then
@@ -224,7 +340,7 @@ class RsServiceTest {
                 .rsEvent(rsEventDto)
                 .build();
 
-        when(tradeRepository.findByRank(10)).thenReturn(tradeDto);
+        when(tradeRepository.findByRankForUpdate(10)).thenReturn(tradeDto);
         when(rsEventRepository.findById(anyInt())).thenReturn(Optional.of(rsEventDtoFotTestBuy));
         // when
         rsService.buy(trade, 10);
@@ -235,5 +351,26 @@ class RsServiceTest {
                 .rsEvent(rsEventDtoFotTestBuy)
                 .build());
         verify(rsEventRepository).save(rsEventDtoFotTestBuy);
+        verify(tradeRepository, never()).delete(any());
+        verify(tradeRecordRepository).supersede(10);
+        assertEquals(0, rsEventDto.getRsRank());
+        verify(rsEventRepository).save(rsEventDto);
+    }
+
+    @Test
+    void shouldRejectBidNotHigherThanPriceBookWithoutAccessingDatabase() {
+        // given
+        Trade trade = Trade.builder()
+                .amount(100)
+                .rank(10)
+                .build();
+        when(rankPriceBook.mayWin(10, 100)).thenReturn(false);
+        // when&&then
+        assertThrows(
+                RuntimeException.class,
+                () -> {
+                    rsService.buy(trade, 10);
+                });
+        verifyNoInteractions(rsEventRepository, tradeRepository);
     }
 }
@@ -0,0 +1,143 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.dto.VoteShardDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteShardRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+@SpringBootTest(properties = {
+        "rs.vote.shards.enabled=true",
+        "rs.vote.shards.count=4",
+        "rs.vote.shards.compact-interval=3600000"})
+@AutoConfigureMockMvc
+class ShardedVoteCounterTest {
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    RsService rsService;
+    @Autowired
+    ShardedVoteCounter shardedVoteCounter;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RsEventRepository rsEventRepository;
+    @Autowired
+    VoteRepository voteRepository;
+    @Autowired
+    VoteShardRepository voteShardRepository;
+    UserDto userDto;
+    RsEventDto rsEventDto;
+
+    @BeforeEach
+    void setUp() {
+        userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+                .gender("female").phone("18888888888").voteNum(20).build());
+        rsEventDto = rsEventRepository.save(RsEventDto.builder().user(userDto).eventName("event name")
+                .keyword("keyword").voteNum(0).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardedVoteCounter.compact();
+        voteShardRepository.deleteAll();
+        voteRepository.deleteAll();
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldSumShardsUntilCompacted() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            rsService.vote(Vote.builder().userId(userDto.getId()).voteNum(2).time(LocalDateTime.now()).build(),
+                    rsEventDto.getId());
+        }
+
+        List<VoteShardDto> shards = shards();
+        assertTrue(shards.size() <= 4);
+        assertEquals(20, shards.stream().mapToInt(VoteShardDto::getVoteNum).sum());
+        assertEquals(0, rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum());
+        assertEquals(20, shardedVoteCounter.pending(rsEventDto.getId()));
+        mockMvc.perform(get("/rs/sortedevents")).andExpect(jsonPath("$[0].voteNum", is(20)));
+        mockMvc.perform(get("/rs/list")).andExpect(jsonPath("$[0].voteNum", is(20)));
+
+        shardedVoteCounter.compact();
+
+        assertEquals(20, rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum());
+        assertEquals(0, shards().stream().mapToInt(VoteShardDto::getVoteNum).sum());
+        assertEquals(0, shardedVoteCounter.pending(rsEventDto.getId()));
+        mockMvc.perform(get("/rs/sortedevents")).andExpect(jsonPath("$[0].voteNum", is(20)));
+        mockMvc.perform(get("/rs/list")).andExpect(jsonPath("$[0].voteNum", is(20)));
+    }
+
+    @Test
+    void shouldNotCountVoteWhenUserHasNotEnoughVotes() {
+        assertThrows(RuntimeException.class, () -> rsService.vote(Vote.builder().userId(userDto.getId()).voteNum(21)
+                .time(LocalDateTime.now()).build(), rsEventDto.getId()));
+
+        assertEquals(0, shards().stream().mapToInt(VoteShardDto::getVoteNum).sum());
+        assertEquals(0, shardedVoteCounter.pending(rsEventDto.getId()));
+    }
+
+    @Test
+    void shouldNotCountCompactedVoteNumTwiceWhileCompacting() throws Exception {
+        VoteShardRepository shardRepository = mock(VoteShardRepository.class);
+        RsEventRepository repository = mock(RsEventRepository.class);
+        VoteFoldLock foldLock = new VoteFoldLock();
+        ShardedVoteCounter counter = new ShardedVoteCounter(shardRepository, repository,
+                mock(ApplicationEventPublisher.class), mock(PlatformTransactionManager.class), foldLock, true, 4);
+        AtomicInteger stored = new AtomicInteger();
+        counter.add(1, 3);
+        when(shardRepository.findUnfolded()).thenReturn(Collections.singletonList(
+                VoteShardDto.builder().id(1).rsEventId(1).shard(0).voteNum(3).build()));
+        // 合并已写入 rsEvent、未合并票数还没减去时读取，读者要等到减去之后，总票数仍是 3
+        CompletableFuture<Integer> total = new CompletableFuture<>();
+        when(repository.addVoteNum(1, 3)).thenAnswer(invocation -> {
+            stored.addAndGet(3);
+            CompletableFuture.runAsync(() -> total.complete(foldLock.read(() -> stored.get() + counter.pending(1))));
+            assertThrows(TimeoutException.class, () -> total.get(100, TimeUnit.MILLISECONDS));
+            return 1;
+        });
+
+        counter.compact();
+
+        assertEquals(3, total.get(1, TimeUnit.SECONDS));
+    }
+
+    private List<VoteShardDto> shards() {
+        return StreamSupport.stream(voteShardRepository.findAll().spliterator(), false)
+                .filter(shard -> shard.getRsEventId() == rsEventDto.getId())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,132 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+@SpringBootTest(properties = {
+        "rs.vote.write-behind.enabled=true",
+        "rs.vote.write-behind.flush-interval=3600000"})
+@AutoConfigureMockMvc
+class WriteBehindVoteCounterTest {
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    RsService rsService;
+    @Autowired
+    WriteBehindVoteCounter voteCounter;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RsEventRepository rsEventRepository;
+    @Autowired
+    VoteRepository voteRepository;
+    UserDto userDto;
+    RsEventDto rsEventDto;
+
+    @BeforeEach
+    void setUp() {
+        userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+                .gender("female").phone("18888888888").voteNum(10).build());
+        rsEventDto = rsEventRepository.save(RsEventDto.builder().user(userDto).eventName("event name")
+                .keyword("keyword").voteNum(0).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        voteCounter.flush();
+        voteRepository.deleteAll();
+        rsEventRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldMergePendingVoteNumUntilFlushed() throws Exception {
+        rsService.vote(Vote.builder().userId(userDto.getId()).voteNum(3).time(LocalDateTime.now()).build(),
+                rsEventDto.getId());
+
+        assertEquals(1, voteRepository.findAll().size());
+        assertEquals(0, rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum());
+        assertEquals(3, voteCounter.pending(rsEventDto.getId()));
+        mockMvc.perform(get("/rs/sortedevents")).andExpect(jsonPath("$[0].voteNum", is(3)));
+        mockMvc.perform(get("/rs/list")).andExpect(jsonPath("$[0].voteNum", is(3)));
+
+        voteCounter.flush();
+
+        assertEquals(3, rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum());
+        assertEquals(0, voteCounter.pending(rsEventDto.getId()));
+        mockMvc.perform(get("/rs/sortedevents")).andExpect(jsonPath("$[0].voteNum", is(3)));
+        mockMvc.perform(get("/rs/list")).andExpect(jsonPath("$[0].voteNum", is(3)));
+    }
+
+    @Test
+    void shouldKeepPendingVoteNumUntilFlushCommitted() {
+        RsEventRepository repository = mock(RsEventRepository.class);
+        WriteBehindVoteCounter counter = new WriteBehindVoteCounter(repository,
+                mock(ApplicationEventPublisher.class), mock(PlatformTransactionManager.class), new VoteFoldLock(), true);
+        counter.add(1, 3);
+        // 写回过程中又有新的投票，且写回尚未提交时 pending 不变
+        when(repository.addVoteNum(1, 3)).thenAnswer(invocation -> {
+            counter.add(1, 2);
+            assertEquals(5, counter.pending(1));
+            return 1;
+        });
+
+        counter.flush();
+
+        assertEquals(2, counter.pending(1));
+
+        when(repository.addVoteNum(anyInt(), anyInt())).thenThrow(new IllegalStateException());
+        assertThrows(IllegalStateException.class, counter::flush);
+        assertEquals(2, counter.pending(1));
+    }
+
+    @Test
+    void shouldNotCountFlushedVoteNumTwiceWhileFlushing() throws Exception {
+        RsEventRepository repository = mock(RsEventRepository.class);
+        VoteFoldLock foldLock = new VoteFoldLock();
+        WriteBehindVoteCounter counter = new WriteBehindVoteCounter(repository,
+                mock(ApplicationEventPublisher.class), mock(PlatformTransactionManager.class), foldLock, true);
+        AtomicInteger stored = new AtomicInteger();
+        counter.add(1, 3);
+        // 写回已提交、计数器还没减去时读取，读者要等到减去之后，数据库票数加未写回票数仍是 3
+        CompletableFuture<Integer> total = new CompletableFuture<>();
+        when(repository.addVoteNum(1, 3)).thenAnswer(invocation -> {
+            stored.addAndGet(3);
+            CompletableFuture.runAsync(() -> total.complete(foldLock.read(() -> stored.get() + counter.pending(1))));
+            assertThrows(TimeoutException.class, () -> total.get(100, TimeUnit.MILLISECONDS));
+            return 1;
+        });
+
+        counter.flush();
+
+        assertEquals(3, total.get(1, TimeUnit.SECONDS));
+    }
+}